@@ -0,0 +1,65 @@
+package com.sumwhy.pulsar;
+
+import com.sumwhy.pulsar.model.BatchSendResult;
+import com.sumwhy.pulsar.model.TopicInfo;
+import com.sumwhy.pulsar.producer.PublisherSender;
+import com.sumwhy.pulsar.producer.TopicRoute;
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p> @date: 2026-10-19 10:30</p>
+ * <p> 以 {@link Publisher} 为输入的流式发送, 需要引入 reactive-streams, 没有引入时不注册, 也不会加载 </p>
+ * <p> 与 {@link PulsarTemplate} 分开, 避免 PulsarTemplate 的方法签名引用可选依赖 </p>
+ *
+ * @author 何嘉豪
+ */
+@Component
+@ConditionalOnClass(name = "org.reactivestreams.Publisher")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class PublisherPulsarTemplate {
+
+    private final PulsarTemplate pulsarTemplate;
+
+    public PublisherPulsarTemplate(PulsarTemplate pulsarTemplate) {
+        this.pulsarTemplate = pulsarTemplate;
+    }
+
+    /**
+     * 订阅 Publisher 并发送, 按确认的速度向上游请求消息, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制
+     *
+     * @param topic 主题
+     * @param msgs  消息
+     * @return 上游结束且所有消息确认后完成
+     */
+    public CompletableFuture<BatchSendResult> streamSend(String topic, Publisher<?> msgs) {
+        return streamSend(pulsarTemplate.retain(topic), msgs);
+    }
+
+    /**
+     * 订阅 Publisher 并发送, 按确认的速度向上游请求消息, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制
+     *
+     * @param topicInfo 主题信息
+     * @param msgs      消息
+     * @return 上游结束且所有消息确认后完成
+     */
+    public CompletableFuture<BatchSendResult> streamSend(TopicInfo topicInfo, Publisher<?> msgs) {
+        return streamSend(pulsarTemplate.retain(topicInfo), msgs);
+    }
+
+    /**
+     * 发送期间持有路由, 按需创建的 producer 不会被淘汰
+     */
+    private CompletableFuture<BatchSendResult> streamSend(TopicRoute route, Publisher<?> msgs) {
+        PublisherSender subscriber = new PublisherSender(pulsarTemplate.newStreamSender(route));
+        subscriber.getResult().whenComplete((result, e) -> route.release());
+        msgs.subscribe(subscriber);
+        return subscriber.getResult();
+    }
+
+}
@@ -1,24 +1,37 @@
 package com.sumwhy.pulsar;
 
 import com.sumwhy.pulsar.exception.NoSuchTopicException;
+import com.sumwhy.pulsar.model.BatchSendResult;
 import com.sumwhy.pulsar.model.TopicInfo;
+import com.sumwhy.pulsar.producer.DelayedSendTimer;
+import com.sumwhy.pulsar.producer.EnvelopeBatcher;
+import com.sumwhy.pulsar.producer.FireAndForgetTracker;
+import com.sumwhy.pulsar.producer.KeyExtractorRegistry;
+import com.sumwhy.pulsar.producer.SendLatencyRecorder;
+import com.sumwhy.pulsar.producer.StreamSender;
+import com.sumwhy.pulsar.producer.TopicRoute;
 import com.sumwhy.pulsar.producer.collector.ProducerCollector;
-import com.sumwhy.pulsar.util.TopicBuilder;
-import com.sumwhy.util.JsonUtil;
+import com.sumwhy.pulsar.producer.spill.SpillManager;
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.MessageId;
-import org.apache.pulsar.client.api.Producer;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * <p> @date: 2021-04-07 17:08</p>
@@ -33,36 +46,112 @@ public class PulsarTemplate {
 
     private final ProducerCollector producerCollector;
 
-    private final TopicBuilder topicBuilder;
+    private final GlobalProducerProperties globalProducerProperties;
 
-    public PulsarTemplate(ProducerCollector producerCollector, TopicBuilder topicBuilder) {
+    private final KeyExtractorRegistry keyExtractors;
+
+    private final DelayedSendTimer delayedSendTimer;
+
+    /**
+     * 本地溢写, 没有开启时为 null
+     */
+    @Nullable
+    private final SpillManager spillManager;
+
+    /**
+     * 发送耗时的记录, 没有注册时为 null
+     */
+    @Nullable
+    private final SendLatencyRecorder latencyRecorder;
+
+    private final FireAndForgetTracker fireAndForgetTracker;
+
+    public PulsarTemplate(ProducerCollector producerCollector, GlobalProducerProperties globalProducerProperties,
+                          KeyExtractorRegistry keyExtractors, DelayedSendTimer delayedSendTimer,
+                          FireAndForgetTracker fireAndForgetTracker, ObjectProvider<SpillManager> spillManager,
+                          ObjectProvider<SendLatencyRecorder> latencyRecorder) {
         this.producerCollector = producerCollector;
-        this.topicBuilder = topicBuilder;
+        this.globalProducerProperties = globalProducerProperties;
+        this.keyExtractors = keyExtractors;
+        this.delayedSendTimer = delayedSendTimer;
+        this.fireAndForgetTracker = fireAndForgetTracker;
+        this.spillManager = spillManager.getIfAvailable();
+        this.latencyRecorder = latencyRecorder.getIfAvailable();
     }
 
 
     /**
-     * 如果是字符串类型, 将直接以 byte 数组形式传送
+     * 如果是字符串类型, 将直接以 byte 数组形式传送, producer 指定了消息类型时直接由 schema 编码
      *
      * @param topic 主题
      * @param msg   消息
-     * @return messageId
+     * @return messageId, 开启本地溢写且消息被溢写时为 null
      * @throws PulsarClientException 发送时的异常
      */
     public MessageId send(String topic, Object msg) throws PulsarClientException {
-        return send(TopicInfo.builder(topic).build(), msg);
+        return send(route(topic), keyExtractors.extractKey(msg), msg);
     }
 
     /**
-     * 如果是字符串类型, 将直接以 byte 数组形式传送
+     * 如果是字符串类型, 将直接以 byte 数组形式传送, producer 指定了消息类型时直接由 schema 编码
      *
      * @param topicInfo 主题信息
      * @param msg       消息
-     * @return messageId
+     * @return messageId, 开启本地溢写且消息被溢写时为 null
      * @throws PulsarClientException 发送时的异常
      */
     public MessageId send(TopicInfo topicInfo, Object msg) throws PulsarClientException {
-        return buildMsg(topicInfo, msg).send();
+        return send(route(topicInfo), keyExtractors.extractKey(msg), msg);
+    }
+
+    /**
+     * 发送带 key 的消息, 同一个 key 的消息由同一个 producer 发送, 在 Key_Shared 订阅中保证顺序
+     *
+     * @param topic 主题
+     * @param key   消息的 key
+     * @param msg   消息
+     * @return messageId, 开启本地溢写且消息被溢写时为 null
+     * @throws PulsarClientException 发送时的异常
+     */
+    public MessageId send(String topic, String key, Object msg) throws PulsarClientException {
+        return send(route(topic), key, msg);
+    }
+
+    /**
+     * 发送带 key 的消息, 同一个 key 的消息由同一个 producer 发送, 在 Key_Shared 订阅中保证顺序
+     *
+     * @param topicInfo 主题信息
+     * @param key       消息的 key
+     * @param msg       消息
+     * @return messageId, 开启本地溢写且消息被溢写时为 null
+     * @throws PulsarClientException 发送时的异常
+     */
+    public MessageId send(TopicInfo topicInfo, String key, Object msg) throws PulsarClientException {
+        return send(route(topicInfo), key, msg);
+    }
+
+    /**
+     * 异步发送带 key 的消息
+     *
+     * @param topic 主题
+     * @param key   消息的 key
+     * @param msg   消息
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
+     */
+    public CompletableFuture<MessageId> sendAsync(String topic, String key, Object msg) {
+        return sendAsync(routeAsync(topic), key, msg);
+    }
+
+    /**
+     * 异步发送带 key 的消息
+     *
+     * @param topicInfo 主题信息
+     * @param key       消息的 key
+     * @param msg       消息
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
+     */
+    public CompletableFuture<MessageId> sendAsync(TopicInfo topicInfo, String key, Object msg) {
+        return sendAsync(routeAsync(topicInfo), key, msg);
     }
 
     /**
@@ -70,10 +159,10 @@ public class PulsarTemplate {
      *
      * @param topic 主题
      * @param msg   消息
-     * @return CompletableFuture
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
      */
     public CompletableFuture<MessageId> sendAsync(String topic, Object msg) {
-        return sendAsync(TopicInfo.builder(topic).build(), msg);
+        return sendAsync(routeAsync(topic), keyExtractors.extractKey(msg), msg);
     }
 
     /**
@@ -81,10 +170,169 @@ public class PulsarTemplate {
      *
      * @param topicInfo 主题信息
      * @param msg       消息
-     * @return CompletableFuture
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
      */
     public CompletableFuture<MessageId> sendAsync(TopicInfo topicInfo, Object msg) {
-        return buildMsg(topicInfo, msg).sendAsync();
+        return sendAsync(routeAsync(topicInfo), keyExtractors.extractKey(msg), msg);
+    }
+
+    /**
+     * 发送消息, 不返回结果, 失败时交给 {@link com.sumwhy.pulsar.producer.SendErrorHandler} 并计数,
+     * 适合允许丢失的大量消息, 不记录发送耗时
+     *
+     * @param topic 主题
+     * @param msg   消息
+     */
+    public void sendAndForget(String topic, Object msg) {
+        sendAndForget(routeAsync(topic), topic, keyExtractors.extractKey(msg), msg);
+    }
+
+    /**
+     * 发送消息, 不返回结果, 失败时交给 {@link com.sumwhy.pulsar.producer.SendErrorHandler} 并计数
+     *
+     * @param topicInfo 主题信息
+     * @param msg       消息
+     */
+    public void sendAndForget(TopicInfo topicInfo, Object msg) {
+        sendAndForget(routeAsync(topicInfo), topicInfo.getTopic(), keyExtractors.extractKey(msg), msg);
+    }
+
+    /**
+     * 发送带 key 的消息, 不返回结果, 失败时交给 {@link com.sumwhy.pulsar.producer.SendErrorHandler} 并计数
+     *
+     * @param topic 主题
+     * @param key   消息的 key
+     * @param msg   消息
+     */
+    public void sendAndForget(String topic, String key, Object msg) {
+        sendAndForget(routeAsync(topic), topic, key, msg);
+    }
+
+    /**
+     * 发送带 key 的消息, 不返回结果, 失败时交给 {@link com.sumwhy.pulsar.producer.SendErrorHandler} 并计数
+     *
+     * @param topicInfo 主题信息
+     * @param key       消息的 key
+     * @param msg       消息
+     */
+    public void sendAndForget(TopicInfo topicInfo, String key, Object msg) {
+        sendAndForget(routeAsync(topicInfo), topicInfo.getTopic(), key, msg);
+    }
+
+    /**
+     * 按需创建的 producer 还在创建时, 在创建完成的线程上发送, 按需创建的 producer 不会因队列满而阻塞该线程
+     */
+    private void sendAndForget(CompletableFuture<TopicRoute> route, String topic, @Nullable String key, Object msg) {
+        TopicRoute ready = ready(route);
+        if (ready != null) {
+            sendAndForget(ready, key, msg);
+            return;
+        }
+        route.whenComplete((created, e) -> {
+            if (e == null) {
+                sendAndForget(created, key, msg);
+            } else {
+                fireAndForgetTracker.failed(topic, e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+    }
+
+    /**
+     * 完成回调按 topic 共用, 编码等发送前的异常同样交给失败回调
+     */
+    private void sendAndForget(TopicRoute route, @Nullable String key, Object msg) {
+        try {
+            doSendAsync(route, key, msg).whenComplete(fireAndForgetTracker.callback(route.getTopicUrl()));
+        } catch (RuntimeException e) {
+            fireAndForgetTracker.failed(route.getTopicUrl(), e);
+        }
+    }
+
+    /**
+     * 同步发送并记录耗时
+     */
+    private MessageId send(TopicRoute route, @Nullable String key, Object msg) throws PulsarClientException {
+        SendLatencyRecorder recorder = latencyRecorder;
+        if (recorder == null) {
+            return doSend(route, key, msg);
+        }
+        long begin = System.nanoTime();
+        try {
+            return doSend(route, key, msg);
+        } finally {
+            recorder.recordSync(route.getTopicUrl(), System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 路由已就绪时直接发送, 按需创建的 producer 还在创建时在创建完成后发送, 不阻塞调用线程
+     */
+    private CompletableFuture<MessageId> sendAsync(CompletableFuture<TopicRoute> route, @Nullable String key, Object msg) {
+        TopicRoute ready = ready(route);
+        return ready != null ? sendAsync(ready, key, msg) : route.thenCompose(created -> sendAsync(created, key, msg));
+    }
+
+    /**
+     * 异步发送并记录耗时, sendAsync 调用本身的耗时和等待确认的耗时分开记录, 记录时每次多分配一个回调和 future
+     */
+    private CompletableFuture<MessageId> sendAsync(TopicRoute route, @Nullable String key, Object msg) {
+        SendLatencyRecorder recorder = latencyRecorder;
+        if (recorder == null) {
+            return doSendAsync(route, key, msg);
+        }
+        long begin = System.nanoTime();
+        CompletableFuture<MessageId> future = doSendAsync(route, key, msg);
+        long returned = System.nanoTime();
+        String topicUrl = route.getTopicUrl();
+        future.whenComplete((messageId, e) -> recorder.recordAsync(topicUrl, returned - begin,
+                System.nanoTime() - returned));
+        return future;
+    }
+
+    /**
+     * 开启信封模式时没有 key 的消息装入信封, 等待信封发送完成;
+     * 开启本地溢写时, producer 不可用的消息写入本地, 此时返回 null
+     */
+    private MessageId doSend(TopicRoute route, @Nullable String key, Object msg) throws PulsarClientException {
+        EnvelopeBatcher envelopeBatcher = route.getEnvelopeBatcher();
+        if (envelopeBatcher != null && key == null) {
+            byte[] payload = route.toBytes(msg);
+            if (envelopeBatcher.accepts(payload)) {
+                try {
+                    return envelopeBatcher.add(payload).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw PulsarClientException.unwrap(e);
+                } catch (ExecutionException e) {
+                    throw PulsarClientException.unwrap(e.getCause());
+                }
+            }
+            // 已编码, 后面不会重复编码
+            msg = payload;
+        }
+        if (spillManager != null && spillManager.accepts(route)) {
+            return spillManager.send(route, key, msg);
+        }
+        return buildMsg(route, key, msg).send();
+    }
+
+    /**
+     * 开启信封模式时没有 key 的消息装入信封, 以信封的 messageId 完成;
+     * 开启本地溢写时, producer 不可用的消息写入本地, 此时以 null 完成
+     */
+    private CompletableFuture<MessageId> doSendAsync(TopicRoute route, @Nullable String key, Object msg) {
+        EnvelopeBatcher envelopeBatcher = route.getEnvelopeBatcher();
+        if (envelopeBatcher != null && key == null) {
+            byte[] payload = route.toBytes(msg);
+            if (envelopeBatcher.accepts(payload)) {
+                return envelopeBatcher.add(payload);
+            }
+            msg = payload;
+        }
+        if (spillManager != null && spillManager.accepts(route)) {
+            return spillManager.sendAsync(route, key, msg);
+        }
+        return buildMsg(route, key, msg).sendAsync();
     }
 
     /**
@@ -92,10 +340,10 @@ public class PulsarTemplate {
      *
      * @param topic   主题
      * @param msgList 消息列表
-     * @return CompletableFuture 集合
+     * @return CompletableFuture 集合, 开启本地溢写时被溢写的消息以 null 完成
      */
     public List<CompletableFuture<MessageId>> batchSend(String topic, List<?> msgList) {
-        return batchSend(TopicInfo.builder(topic).build(), msgList);
+        return batchSend(route(topic), msgList);
     }
 
     /**
@@ -103,12 +351,16 @@ public class PulsarTemplate {
      *
      * @param topicInfo 主题信息
      * @param msgList   消息列表
-     * @return CompletableFuture 集合
+     * @return CompletableFuture 集合, 开启本地溢写时被溢写的消息以 null 完成
      */
     public List<CompletableFuture<MessageId>> batchSend(TopicInfo topicInfo, List<?> msgList) {
-        List<CompletableFuture<MessageId>> list = new ArrayList<>();
+        return batchSend(route(topicInfo), msgList);
+    }
+
+    private List<CompletableFuture<MessageId>> batchSend(TopicRoute route, List<?> msgList) {
+        List<CompletableFuture<MessageId>> list = new ArrayList<>(msgList.size());
         for (Object msg : msgList) {
-            list.add(buildMsg(topicInfo, msg).sendAsync());
+            list.add(sendAsync(route, keyExtractors.extractKey(msg), msg));
         }
         return list;
     }
@@ -118,10 +370,10 @@ public class PulsarTemplate {
      *
      * @param topic 主题
      * @param msg   消息
-     * @return CompletableFuture 集合
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
      */
     public CompletableFuture<MessageId> batchSend(String topic, Object msg) {
-        return batchSend(TopicInfo.builder(topic).build(), msg);
+        return sendAsync(route(topic), keyExtractors.extractKey(msg), msg);
     }
 
     /**
@@ -129,10 +381,10 @@ public class PulsarTemplate {
      *
      * @param topicInfo 主题信息
      * @param msg       消息
-     * @return CompletableFuture 集合
+     * @return CompletableFuture, 开启本地溢写且消息被溢写时以 null 完成
      */
     public CompletableFuture<MessageId> batchSend(TopicInfo topicInfo, Object msg) {
-        return buildMsg(topicInfo, msg).sendAsync();
+        return sendAsync(route(topicInfo), keyExtractors.extractKey(msg), msg);
     }
 
     /**
@@ -143,7 +395,8 @@ public class PulsarTemplate {
      * @return CompletableFuture 集合
      */
     public CompletableFuture<Void> batchSend4check(String topic, List<?> msgList) {
-        return batchSend4check(TopicInfo.builder(topic).build(), msgList);
+        List<CompletableFuture<MessageId>> list = batchSend(topic, msgList);
+        return CompletableFuture.allOf(list.toArray(new CompletableFuture[0]));
     }
 
     /**
@@ -159,7 +412,68 @@ public class PulsarTemplate {
     }
 
     /**
-     * 延时发送信息
+     * 流式批量发送, 阻塞直到所有消息确认, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制
+     * <p>
+     * 不保留每条消息的 future, 适合发送大量消息; 消息直接交给 producer, 不装入信封, 也不经过本地溢写
+     *
+     * @param topic 主题
+     * @param msgs  消息
+     * @return 汇总结果
+     */
+    public BatchSendResult streamSend(String topic, Iterator<?> msgs) {
+        return streamSend(retain(topic), msgs);
+    }
+
+    /**
+     * 流式批量发送, 阻塞直到所有消息确认, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制
+     *
+     * @param topicInfo 主题信息
+     * @param msgs      消息
+     * @return 汇总结果
+     */
+    public BatchSendResult streamSend(TopicInfo topicInfo, Iterator<?> msgs) {
+        return streamSend(retain(topicInfo), msgs);
+    }
+
+    /**
+     * 发送期间持有路由, 按需创建的 producer 不会被淘汰
+     */
+    private BatchSendResult streamSend(TopicRoute route, Iterator<?> msgs) {
+        try {
+            return newStreamSender(route).send(msgs);
+        } finally {
+            route.release();
+        }
+    }
+
+    /**
+     * 流式批量发送, 阻塞直到所有消息确认, 流由调用方负责关闭
+     *
+     * @param topic 主题
+     * @param msgs  消息
+     * @return 汇总结果
+     */
+    public BatchSendResult streamSend(String topic, Stream<?> msgs) {
+        return streamSend(topic, msgs.iterator());
+    }
+
+    /**
+     * 流式批量发送, 阻塞直到所有消息确认, 流由调用方负责关闭
+     *
+     * @param topicInfo 主题信息
+     * @param msgs      消息
+     * @return 汇总结果
+     */
+    public BatchSendResult streamSend(TopicInfo topicInfo, Stream<?> msgs) {
+        return streamSend(topicInfo, msgs.iterator());
+    }
+
+    StreamSender newStreamSender(TopicRoute route) {
+        return new StreamSender(route, globalProducerProperties.getMaxInFlight(), keyExtractors);
+    }
+
+    /**
+     * 延时发送信息, 延时消息各自设置投递时间, 不装入信封, 也不经过本地溢写
      *
      * @param topic     主题
      * @param msg       消息
@@ -168,7 +482,7 @@ public class PulsarTemplate {
      * @throws PulsarClientException 发送时出现的异常
      */
     public MessageId sendDelayedMessage(String topic, Object msg, Duration afterTime) throws PulsarClientException {
-        return sendDelayedMessage(TopicInfo.builder(topic).build(), msg, afterTime);
+        return buildMsg(route(topic), msg).deliverAfter(afterTime.toMillis(), TimeUnit.MILLISECONDS).send();
     }
 
     /**
@@ -181,7 +495,7 @@ public class PulsarTemplate {
      * @throws PulsarClientException 发送时出现的异常
      */
     public MessageId sendDelayedMessage(TopicInfo topicInfo, Object msg, Duration afterTime) throws PulsarClientException {
-        return buildMsg(topicInfo, msg).deliverAfter(afterTime.getSeconds(), TimeUnit.SECONDS).send();
+        return buildMsg(route(topicInfo), msg).deliverAfter(afterTime.toMillis(), TimeUnit.MILLISECONDS).send();
     }
 
     /**
@@ -193,7 +507,7 @@ public class PulsarTemplate {
      * @return messageId
      */
     public CompletableFuture<MessageId> sendDelayedMessageAsync(String topic, Object msg, Duration afterTime) {
-        return sendDelayedMessageAsync(TopicInfo.builder(topic).build(), msg, afterTime);
+        return sendDelayedAsync(route(topic), msg, afterTime.toMillis());
     }
 
     /**
@@ -205,7 +519,7 @@ public class PulsarTemplate {
      * @return messageId
      */
     public CompletableFuture<MessageId> sendDelayedMessageAsync(TopicInfo topicInfo, Object msg, Duration afterTime) {
-        return buildMsg(topicInfo, msg).deliverAfter(afterTime.getSeconds(), TimeUnit.SECONDS).sendAsync();
+        return sendDelayedAsync(route(topicInfo), msg, afterTime.toMillis());
     }
 
     /**
@@ -218,7 +532,7 @@ public class PulsarTemplate {
      * @throws PulsarClientException 发送时出现的异常
      */
     public MessageId sendMessageAtSpecificTime(String topic, Object msg, long futureTimeMillis) throws PulsarClientException {
-        return sendMessageAtSpecificTime(TopicInfo.builder(topic).build(), msg, futureTimeMillis);
+        return buildMsg(route(topic), msg).deliverAt(futureTimeMillis).send();
     }
 
     /**
@@ -231,7 +545,7 @@ public class PulsarTemplate {
      * @throws PulsarClientException 发送时出现的异常
      */
     public MessageId sendMessageAtSpecificTime(TopicInfo topicInfo, Object msg, long futureTimeMillis) throws PulsarClientException {
-        return buildMsg(topicInfo, msg).deliverAt(futureTimeMillis).send();
+        return buildMsg(route(topicInfo), msg).deliverAt(futureTimeMillis).send();
     }
 
     /**
@@ -243,7 +557,7 @@ public class PulsarTemplate {
      * @return messageId
      */
     public CompletableFuture<MessageId> sendMessageAtSpecificTimeAsync(String topic, Object msg, long futureTimeMillis) {
-        return sendMessageAtSpecificTimeAsync(TopicInfo.builder(topic).build(), msg, futureTimeMillis);
+        return sendDelayedAsync(route(topic), msg, futureTimeMillis - System.currentTimeMillis());
     }
 
     /**
@@ -255,31 +569,190 @@ public class PulsarTemplate {
      * @return messageId
      */
     public CompletableFuture<MessageId> sendMessageAtSpecificTimeAsync(TopicInfo topicInfo, Object msg, long futureTimeMillis) {
-        return buildMsg(topicInfo, msg).deliverAt(futureTimeMillis).sendAsync();
+        return sendDelayedAsync(route(topicInfo), msg, futureTimeMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * 延时小于 {@link GlobalProducerProperties#getLocalDelayThreshold()} 时由本地时间轮处理, 否则交给 broker 延时投递
+     *
+     * @param route       路由
+     * @param msg         消息
+     * @param delayMillis 延时, 单位毫秒
+     * @return CompletableFuture
+     */
+    private CompletableFuture<MessageId> sendDelayedAsync(TopicRoute route, Object msg, long delayMillis) {
+        String key = keyExtractors.extractKey(msg);
+        if (delayedSendTimer.accepts(delayMillis) && route.retain()) {
+            // 等待期间持有路由, 按需创建的 producer 不会被淘汰
+            CompletableFuture<MessageId> future;
+            try {
+                future = delayedSendTimer.schedule(route, key, route.toValue(msg), delayMillis);
+            } catch (RuntimeException e) {
+                route.release();
+                throw e;
+            }
+            future.whenComplete((messageId, e) -> route.release());
+            return future;
+        }
+        return buildMsg(route, key, msg).deliverAfter(Math.max(0L, delayMillis), TimeUnit.MILLISECONDS).sendAsync();
+    }
+
+    /**
+     * 获取绑定到 topic 的发送句柄, 类型不匹配时直接抛出异常, 建议在启动阶段获取并持有
+     * <p>
+     * 句柄持有期间按需创建的 producer 不会被淘汰, 不再使用时调用 {@link TopicHandle#close()};
+     * 句柄直接交给 producer 发送, 不装入信封, 也不经过本地溢写
+     *
+     * @param topic   主题
+     * @param msgType 消息类型
+     * @param <T>     消息类型
+     * @return 发送句柄
+     */
+    public <T> TopicHandle<T> handle(String topic, Class<T> msgType) {
+        return handle(retain(topic), msgType);
+    }
+
+    /**
+     * 获取绑定到 topic 的发送句柄, 类型不匹配时直接抛出异常, 建议在启动阶段获取并持有
+     * <p>
+     * 句柄持有期间按需创建的 producer 不会被淘汰, 不再使用时调用 {@link TopicHandle#close()}
+     *
+     * @param topicInfo 主题信息
+     * @param msgType   消息类型
+     * @param <T>       消息类型
+     * @return 发送句柄
+     */
+    public <T> TopicHandle<T> handle(TopicInfo topicInfo, Class<T> msgType) {
+        return handle(retain(topicInfo), msgType);
     }
 
-    private Object easyToSendCharSequence(Object msg) {
-        Object actualMsg = msg;
-        if (msg instanceof CharSequence) {
-            actualMsg = (((CharSequence) msg).toString().getBytes(StandardCharsets.UTF_8));
+    private <T> TopicHandle<T> handle(TopicRoute route, Class<T> msgType) {
+        Class<?> producerMsgType = route.getMsgType();
+        if (!byte[].class.equals(producerMsgType) && !producerMsgType.isAssignableFrom(msgType)) {
+            route.release();
+            throw new IllegalArgumentException("the producer of topic [" + route.getTopicUrl() + "] accepts "
+                    + producerMsgType.getName() + ", but the handle requires " + msgType.getName());
+        }
+        Function<? super T, ?> serializer;
+        if (!route.isBytesSchema() || byte[].class.equals(msgType)) {
+            // schema 负责编码, 或者本身就是 byte 数组
+            serializer = Function.identity();
         } else {
-            actualMsg = JsonUtil.jsonValue(msg).getBytes(StandardCharsets.UTF_8);
+            serializer = route::toBytes;
+        }
+        return new TopicHandle<>(route, serializer, keyExtractors);
+    }
+
+    /**
+     * 根据 topic 查找路由
+     *
+     * @param topic 主题
+     * @return 路由
+     */
+    private TopicRoute route(String topic) throws NoSuchTopicException {
+        TopicRoute route = producerCollector.route(topic);
+        if (route == null) {
+            throw new NoSuchTopicException(topic);
         }
-        return actualMsg;
+        return route;
     }
 
     /**
-     * 构建信息的基础方法
+     * 根据 topic 信息查找路由
      *
      * @param topicInfo 主题信息
-     * @param msg       消息
+     * @return 路由
+     */
+    private TopicRoute route(TopicInfo topicInfo) throws NoSuchTopicException {
+        TopicRoute route = producerCollector.route(topicInfo);
+        if (route == null) {
+            throw new NoSuchTopicException(topicInfo.getTopic());
+        }
+        return route;
+    }
+
+    /**
+     * 异步查找路由, 按需创建的 producer 还在创建时不阻塞
+     *
+     * @param topic 主题
+     * @return 路由
+     */
+    private CompletableFuture<TopicRoute> routeAsync(String topic) throws NoSuchTopicException {
+        CompletableFuture<TopicRoute> route = producerCollector.routeAsync(topic);
+        if (route == null) {
+            throw new NoSuchTopicException(topic);
+        }
+        return route;
+    }
+
+    /**
+     * 异步查找路由, 按需创建的 producer 还在创建时不阻塞
+     *
+     * @param topicInfo 主题信息
+     * @return 路由
+     */
+    private CompletableFuture<TopicRoute> routeAsync(TopicInfo topicInfo) throws NoSuchTopicException {
+        CompletableFuture<TopicRoute> route = producerCollector.routeAsync(topicInfo);
+        if (route == null) {
+            throw new NoSuchTopicException(topicInfo.getTopic());
+        }
+        return route;
+    }
+
+    /**
+     * @return 已经就绪的路由, 还在创建或创建失败时返回 null
+     */
+    @Nullable
+    private static TopicRoute ready(CompletableFuture<TopicRoute> route) {
+        return route.isDone() && !route.isCompletedExceptionally() ? route.join() : null;
+    }
+
+    /**
+     * 查找并持有路由, 持有期间按需创建的 producer 不会被淘汰, 使用完后调用 {@link TopicRoute#release()}
+     *
+     * @param topic 主题
+     * @return 已持有的路由
+     */
+    TopicRoute retain(String topic) throws NoSuchTopicException {
+        while (true) {
+            TopicRoute route = route(topic);
+            // 查找后被淘汰时重新查找, 会重新创建 producer
+            if (route.retain()) {
+                return route;
+            }
+        }
+    }
+
+    /**
+     * 查找并持有路由, 持有期间按需创建的 producer 不会被淘汰, 使用完后调用 {@link TopicRoute#release()}
+     *
+     * @param topicInfo 主题信息
+     * @return 已持有的路由
+     */
+    TopicRoute retain(TopicInfo topicInfo) throws NoSuchTopicException {
+        while (true) {
+            TopicRoute route = route(topicInfo);
+            if (route.retain()) {
+                return route;
+            }
+        }
+    }
+
+    /**
+     * 构建信息的基础方法, 消息类型注册了 {@link com.sumwhy.pulsar.producer.KeyExtractor} 时自动设置 key
+     *
+     * @param route 路由
+     * @param msg   消息
      * @return 带类型的消息建造者
      */
     @SuppressWarnings("rawtypes")
-    private TypedMessageBuilder buildMsg(TopicInfo topicInfo, Object msg) throws NoSuchTopicException {
-        Producer producer = producerCollector.getProducer(topicBuilder.buildTopicUrl(topicInfo))
-                .orElseThrow(NoSuchTopicException::new);
-        return producer.newMessage().value(easyToSendCharSequence(msg));
+    private TypedMessageBuilder buildMsg(TopicRoute route, Object msg) {
+        return route.newMessage(keyExtractors.extractKey(msg), msg);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private TypedMessageBuilder buildMsg(TopicRoute route, @Nullable String key, Object msg) {
+        return route.newMessage(key, msg);
     }
 
 
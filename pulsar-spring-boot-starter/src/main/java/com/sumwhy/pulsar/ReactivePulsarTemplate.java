@@ -0,0 +1,129 @@
+package com.sumwhy.pulsar;
+
+import com.sumwhy.pulsar.model.BatchSendResult;
+import com.sumwhy.pulsar.model.TopicInfo;
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
+import org.apache.pulsar.client.api.MessageId;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * <p> @date: 2026-10-18 19:50</p>
+ * <p> 基于 reactor 的发送模板, 所有方法在订阅时才发送, 不阻塞调用线程, 需要引入 reactor-core </p>
+ *
+ * @author 何嘉豪
+ */
+@Component
+@ConditionalOnClass(name = "reactor.core.publisher.Mono")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class ReactivePulsarTemplate {
+
+    private final PulsarTemplate pulsarTemplate;
+
+    private final PublisherPulsarTemplate publisherPulsarTemplate;
+
+    private final GlobalProducerProperties globalProducerProperties;
+
+    public ReactivePulsarTemplate(PulsarTemplate pulsarTemplate, PublisherPulsarTemplate publisherPulsarTemplate,
+                                  GlobalProducerProperties globalProducerProperties) {
+        this.pulsarTemplate = pulsarTemplate;
+        this.publisherPulsarTemplate = publisherPulsarTemplate;
+        this.globalProducerProperties = globalProducerProperties;
+    }
+
+    /**
+     * 发送消息
+     *
+     * @param topic 主题
+     * @param msg   消息
+     * @return 订阅时发送, 服务端确认后发出 messageId
+     */
+    public Mono<MessageId> send(String topic, Object msg) {
+        return Mono.defer(() -> Mono.fromFuture(pulsarTemplate.sendAsync(topic, msg)));
+    }
+
+    /**
+     * 发送消息
+     *
+     * @param topicInfo 主题信息
+     * @param msg       消息
+     * @return 订阅时发送, 服务端确认后发出 messageId
+     */
+    public Mono<MessageId> send(TopicInfo topicInfo, Object msg) {
+        return Mono.defer(() -> Mono.fromFuture(pulsarTemplate.sendAsync(topicInfo, msg)));
+    }
+
+    /**
+     * 发送带 key 的消息
+     *
+     * @param topic 主题
+     * @param key   消息的 key
+     * @param msg   消息
+     * @return 订阅时发送, 服务端确认后发出 messageId
+     */
+    public Mono<MessageId> send(String topic, String key, Object msg) {
+        return Mono.defer(() -> Mono.fromFuture(pulsarTemplate.sendAsync(topic, key, msg)));
+    }
+
+    /**
+     * 发送带 key 的消息
+     *
+     * @param topicInfo 主题信息
+     * @param key       消息的 key
+     * @param msg       消息
+     * @return 订阅时发送, 服务端确认后发出 messageId
+     */
+    public Mono<MessageId> send(TopicInfo topicInfo, String key, Object msg) {
+        return Mono.defer(() -> Mono.fromFuture(pulsarTemplate.sendAsync(topicInfo, key, msg)));
+    }
+
+    /**
+     * 逐条发送, 按输入顺序发出 messageId, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制,
+     * 下游的需求决定向上游请求的速度
+     *
+     * @param topic 主题
+     * @param msgs  消息
+     * @return messageId
+     */
+    public Flux<MessageId> sendMany(String topic, Publisher<?> msgs) {
+        return Flux.from(msgs).flatMapSequential(msg -> send(topic, msg), globalProducerProperties.getMaxInFlight());
+    }
+
+    /**
+     * 逐条发送, 按输入顺序发出 messageId, 在途数量受 {@link GlobalProducerProperties#getMaxInFlight()} 限制
+     *
+     * @param topicInfo 主题信息
+     * @param msgs      消息
+     * @return messageId
+     */
+    public Flux<MessageId> sendMany(TopicInfo topicInfo, Publisher<?> msgs) {
+        return Flux.from(msgs).flatMapSequential(msg -> send(topicInfo, msg), globalProducerProperties.getMaxInFlight());
+    }
+
+    /**
+     * 流式发送, 只返回汇总结果, 适合大量消息
+     *
+     * @param topic 主题
+     * @param msgs  消息
+     * @return 上游结束且所有消息确认后发出汇总结果
+     */
+    public Mono<BatchSendResult> streamSend(String topic, Publisher<?> msgs) {
+        return Mono.defer(() -> Mono.fromFuture(publisherPulsarTemplate.streamSend(topic, msgs)));
+    }
+
+    /**
+     * 流式发送, 只返回汇总结果, 适合大量消息
+     *
+     * @param topicInfo 主题信息
+     * @param msgs      消息
+     * @return 上游结束且所有消息确认后发出汇总结果
+     */
+    public Mono<BatchSendResult> streamSend(TopicInfo topicInfo, Publisher<?> msgs) {
+        return Mono.defer(() -> Mono.fromFuture(publisherPulsarTemplate.streamSend(topicInfo, msgs)));
+    }
+
+}
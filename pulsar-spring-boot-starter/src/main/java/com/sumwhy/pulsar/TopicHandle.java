@@ -0,0 +1,140 @@
+package com.sumwhy.pulsar;
+
+import com.sumwhy.pulsar.producer.KeyExtractorRegistry;
+import com.sumwhy.pulsar.producer.TopicRoute;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <p> @date: 2026-10-18 11:05</p>
+ * <p> 绑定了 producer, 序列化方式和 topic 地址的发送句柄, 由 {@link PulsarTemplate#handle(String, Class)} 创建 </p>
+ * <p> 句柄创建时完成 topic 解析和类型校验, 发送时不再查找路由, 适合在热点路径上长期持有 </p>
+ * <p> 句柄持有路由, 按需创建的 producer 在句柄关闭前不会被淘汰 </p>
+ * <p> 句柄直接交给 producer 发送, 不经过 {@link PulsarTemplate#send(String, Object)} 的信封和本地溢写,
+ * 与 PulsarTemplate 混用时, 装入信封等待发送的消息可能排在句柄之后发送的消息后面 </p>
+ *
+ * @param <T> 消息类型
+ * @author 何嘉豪
+ */
+public class TopicHandle<T> implements AutoCloseable {
+
+    /**
+     * 解析后的完整 topic 地址
+     */
+    private final String topicUrl;
+
+    /**
+     * 绑定的路由, 发送时由路由选择 producer
+     */
+    private final TopicRoute route;
+
+    /**
+     * 将消息转换为 producer schema 接受的值
+     */
+    private final Function<? super T, ?> serializer;
+
+    /**
+     * 没有指定 key 时按消息类型提取 key
+     */
+    private final KeyExtractorRegistry keyExtractors;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TopicHandle(TopicRoute route, Function<? super T, ?> serializer, KeyExtractorRegistry keyExtractors) {
+        this.topicUrl = route.getTopicUrl();
+        this.route = route;
+        this.serializer = serializer;
+        this.keyExtractors = keyExtractors;
+    }
+
+    /**
+     * 同步发送消息
+     *
+     * @param msg 消息
+     * @return messageId
+     * @throws PulsarClientException 发送时的异常
+     */
+    public MessageId send(T msg) throws PulsarClientException {
+        return newMessage(msg).send();
+    }
+
+    /**
+     * 异步发送消息
+     *
+     * @param msg 消息
+     * @return CompletableFuture
+     */
+    public CompletableFuture<MessageId> sendAsync(T msg) {
+        return newMessage(msg).sendAsync();
+    }
+
+    /**
+     * 同步发送带 key 的消息
+     *
+     * @param key 消息的 key
+     * @param msg 消息
+     * @return messageId
+     * @throws PulsarClientException 发送时的异常
+     */
+    public MessageId send(String key, T msg) throws PulsarClientException {
+        return newMessage(key, msg).send();
+    }
+
+    /**
+     * 异步发送带 key 的消息
+     *
+     * @param key 消息的 key
+     * @param msg 消息
+     * @return CompletableFuture
+     */
+    public CompletableFuture<MessageId> sendAsync(String key, T msg) {
+        return newMessage(key, msg).sendAsync();
+    }
+
+    /**
+     * 构建消息, 用于设置属性, 延时等, 消息类型注册了 {@link com.sumwhy.pulsar.producer.KeyExtractor} 时自动设置 key
+     *
+     * @param msg 消息
+     * @return 带类型的消息建造者
+     */
+    public TypedMessageBuilder<Object> newMessage(T msg) {
+        return newMessage(keyExtractors.extractKey(msg), msg);
+    }
+
+    /**
+     * 构建带 key 的消息, 同一个 key 的消息由同一个 producer 发送
+     *
+     * @param key 消息的 key, 为 null 时不设置
+     * @param msg 消息
+     * @return 带类型的消息建造者
+     */
+    @SuppressWarnings("unchecked")
+    public TypedMessageBuilder<Object> newMessage(@Nullable String key, T msg) {
+        Object value = serializer.apply(msg);
+        Producer<Object> producer = (Producer<Object>) route.selectProducer(value, key);
+        TypedMessageBuilder<Object> builder = producer.newMessage().value(value);
+        return key == null ? builder : builder.key(key);
+    }
+
+    public String getTopicUrl() {
+        return topicUrl;
+    }
+
+    /**
+     * 释放对路由的持有, 之后按需创建的 producer 空闲时可以被淘汰, 淘汰后继续发送会失败; 启动时创建的 producer 不受影响
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            route.release();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.sumwhy.pulsar.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p> @date: 2026-10-18 23:00</p>
+ *
+ * <p> 批量消费的攒批条件, 只在 {@link PulsarConsumer#batch()} 开启时有效, 任意一个条件满足即交给消费方法 </p>
+ * <p> 对应 {@link org.apache.pulsar.client.api.BatchReceivePolicy}, 小于等于 0 表示不限制, 但不能都不限制 </p>
+ *
+ * @author 何嘉豪
+ */
+@Target(ElementType.ANNOTATION_TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface BatchReceive {
+
+    /**
+     * 一批的最大消息数, 超过消费者的接收队列大小时以接收队列大小为准
+     *
+     * @return 最大消息数
+     */
+    int maxNumMessages() default 100;
+
+    /**
+     * 一批的最大字节数, 默认 10MB
+     *
+     * @return 最大字节数
+     */
+    int maxNumBytes() default 10 * 1024 * 1024;
+
+    /**
+     * 等待攒满一批的最长时间, 单位毫秒, 超时后有多少消息就交给消费方法多少
+     *
+     * @return 最长等待时间
+     */
+    int timeout() default 100;
+
+}
@@ -0,0 +1,42 @@
+package com.sumwhy.pulsar.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p> @date: 2026-10-18 23:50</p>
+ *
+ * <p> 累积确认的配置, 只支持 Exclusive 和 Failover 订阅, 不支持批量消费, 参数为 Flux 的方法和三个参数的方法 </p>
+ * <p> 开启后消息在独立线程中按顺序消费, 每处理 {@link #maxMessages()} 条或距上次确认 {@link #maxDelay()} 毫秒时
+ * 累积确认一次; 进程异常退出时最后一批已处理未确认的消息会再次消费 </p>
+ *
+ * @author 何嘉豪
+ */
+@Target(ElementType.ANNOTATION_TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CumulativeAck {
+
+    /**
+     * 是否开启累积确认, 开启 {@link PulsarConsumer#lanes()} 时没有开启也会累积确认, 但每次推进都确认
+     *
+     * @return 是否开启
+     */
+    boolean enabled() default false;
+
+    /**
+     * 每处理多少条消息确认一次
+     *
+     * @return 消息数
+     */
+    int maxMessages() default 100;
+
+    /**
+     * 处理完成的消息最多等待多久确认, 单位毫秒
+     *
+     * @return 最长等待时间
+     */
+    long maxDelay() default 100L;
+
+}
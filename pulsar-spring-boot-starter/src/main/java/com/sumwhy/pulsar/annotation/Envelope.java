@@ -0,0 +1,65 @@
+package com.sumwhy.pulsar.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p> @date: 2026-10-18 21:50</p>
+ *
+ * <p> 信封消息的消费配置, 信封由开启了信封模式的生产者发送, 见 {@link com.sumwhy.pulsar.model.ProducerHolder#isEnvelope()} </p>
+ *
+ * @author 何嘉豪
+ */
+@Target(ElementType.ANNOTATION_TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Envelope {
+
+    /**
+     * 消费方法的调用方式
+     *
+     * @return 调用方式
+     */
+    Mode mode() default Mode.EACH;
+
+    /**
+     * 逐条调用时部分消息消费失败的处理方式
+     *
+     * @return 失败的处理方式
+     */
+    FailurePolicy failurePolicy() default FailurePolicy.REDELIVER;
+
+    /**
+     * 调用方式
+     */
+    enum Mode {
+
+        /**
+         * 信封中的每条消息调用一次消费方法, 全部成功后确认信封
+         */
+        EACH,
+
+        /**
+         * 信封中的全部消息作为一个 List 调用一次消费方法, 方法的第一个参数必须是 List, 普通消息作为只有一个元素的 List
+         */
+        LIST
+    }
+
+    /**
+     * 部分失败的处理方式
+     */
+    enum FailurePolicy {
+
+        /**
+         * 停止处理剩余消息并否认整个信封, 重新投递时已成功的消息会再次消费
+         */
+        REDELIVER,
+
+        /**
+         * 记录失败的消息后继续处理, 最后确认整个信封, 失败的消息不会重新投递
+         */
+        SKIP
+    }
+
+}
@@ -34,12 +34,21 @@ public @interface PulsarConsumer {
     String value() default "";
 
     /**
-     * 发送消息的类型 默认为 byte[]
+     * 发送消息的类型 默认为 byte[], 需要与生产者的消息类型一致
+     * <p>
+     * 指定类型后由 schema 解码, 方法参数直接使用 {@code msg.getValue()}, 不再经过 byte[] 转换
      *
      * @return 发送消息的类型
      */
     Class<?> msgType() default byte[].class;
 
+    /**
+     * 编解码方式的名称, 如 json, smile, cbor, protobuf, avro 或自定义 codec 的名称, 为空时根据消息类型自动选择
+     *
+     * @return 编解码方式
+     */
+    String codec() default "";
+
     /**
      * 订阅的类型, 默认为 Exclusive 此处默认为 Shared,便于使用延时队列
      *
@@ -47,6 +56,41 @@ public @interface PulsarConsumer {
      */
     SubscriptionType subscriptionType() default SubscriptionType.Shared;
 
+    /**
+     * 并发消费数, 允许使用 spEL, 大于 1 时只支持 Shared 和 Key_Shared 订阅
+     * <p>
+     * 以同一个订阅创建多个消费者, 每个消费者固定由 client 的一个 listener 线程调用, 实际并发不超过 {@code pulsar.listener-threads};
+     * 消费者之间各自确认, 每个消费者都有自己的接收队列. Key_Shared 下同一个 key 仍然只由一个消费者按顺序消费
+     *
+     * @return 并发消费数
+     */
+    String concurrency() default "1";
+
+    /**
+     * 按 key 分道的通道数, 允许使用 spEL, 大于 1 时只支持 Exclusive 和 Failover 订阅, 不支持批量消费和参数为 Flux 的方法
+     * <p>
+     * 消息按 orderingKey 或 key 的哈希分配到固定的单线程通道, 同一个 key 按顺序消费, 不同 key 并行, 没有 key 的消息都在第一个通道.
+     * 只累积确认到之前的消息全部处理完成的位置; 任意消息失败时延时 {@code pulsar.consumer.default.lane-redelivery-delay}
+     * 后从第一条未确认的消息开始重新投递, 已处理未确认的消息会再次消费. 三个参数的方法自行确认, 只分道
+     *
+     * @return 通道数
+     */
+    String lanes() default "1";
+
+    /**
+     * 确认的分组时间, 单位毫秒, 时间内的确认合并为一次请求发送, 0 表示每次确认立即发送, 小于 0 时使用 client 的默认值 100ms
+     *
+     * @return 确认的分组时间
+     */
+    long acknowledgmentGroupTime() default -1L;
+
+    /**
+     * 累积确认的配置
+     *
+     * @return 累积确认的配置
+     */
+    CumulativeAck cumulativeAck() default @CumulativeAck;
+
     /**
      * 订阅的名称
      *
@@ -96,6 +140,51 @@ public @interface PulsarConsumer {
      */
     int receiverQueueSize() default 1000;
 
+    /**
+     * 同时等待组装的分块消息的最大数量, 超过时根据 {@link #autoAckOldestChunkedMessageOnQueueFull()} 丢弃最早的或暂停接收
+     *
+     * @return 等待组装的分块消息数量
+     */
+    int maxPendingChunkedMessage() default 10;
+
+    /**
+     * 等待组装的分块消息达到上限时, 是否确认并丢弃最早的分块消息, 否则暂停接收直到有消息组装完成
+     *
+     * @return 是否丢弃最早的分块消息
+     */
+    boolean autoAckOldestChunkedMessageOnQueueFull() default false;
+
+    /**
+     * 分块消息在该时间内没有收到全部分块时丢弃, 单位毫秒, 限制组装占用的内存
+     *
+     * @return 未完成分块消息的过期时间
+     */
+    long expireTimeOfIncompleteChunkedMessage() default 60000L;
+
+    /**
+     * 信封消息的消费配置, 普通消息不受影响
+     *
+     * @return 信封消息的消费配置
+     */
+    Envelope envelope() default @Envelope;
+
+    /**
+     * 是否批量消费, 开启后通过 batchReceive 拉取消息, 消费方法的第一个参数必须是 {@code List<T>} 或 {@code Messages<T>},
+     * 三个参数的方法为 (List 或 Messages, Consumer, Messages)
+     * <p>
+     * 方法成功后一次确认整批消息, 失败时整批否认并重新投递
+     *
+     * @return 是否批量消费
+     */
+    boolean batch() default false;
+
+    /**
+     * 批量消费的攒批条件, 只在 {@link #batch()} 开启时有效
+     *
+     * @return 攒批条件
+     */
+    BatchReceive batchReceive() default @BatchReceive;
+
     /**
      * 是否由 admin 创建,是的话，死信和重试队列会在队列名前加上 subscription
      *
@@ -1,7 +1,9 @@
 package com.sumwhy.pulsar.autoconfigure;
 
 import com.sumwhy.pulsar.properties.GlobalConsumerProperties;
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
 import com.sumwhy.pulsar.properties.PulsarProperties;
+import com.sumwhy.pulsar.properties.SpillProperties;
 import org.apache.pulsar.client.api.AuthenticationFactory;
 import org.apache.pulsar.client.api.ClientBuilder;
 import org.apache.pulsar.client.api.PulsarClient;
@@ -23,7 +25,8 @@ import java.util.concurrent.TimeUnit;
 @Configuration
 @ComponentScan(basePackages = "com.sumwhy.pulsar")
 @ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
-@EnableConfigurationProperties({PulsarProperties.class, GlobalConsumerProperties.class})
+@EnableConfigurationProperties({PulsarProperties.class, GlobalConsumerProperties.class, GlobalProducerProperties.class,
+        SpillProperties.class})
 public class PulsarAutoConfiguration {
 
     private final PulsarProperties pulsarProperties;
@@ -44,7 +47,8 @@ public class PulsarAutoConfiguration {
                 .connectionTimeout((int) pulsarProperties.getConnectionTimeout().getSeconds(), TimeUnit.SECONDS)
                 .operationTimeout((int) pulsarProperties.getOperationTimeout().getSeconds(), TimeUnit.SECONDS)
                 .startingBackoffInterval(pulsarProperties.getMaxBackoffInterval().toMillis(), TimeUnit.MILLISECONDS)
-                .maxBackoffInterval(pulsarProperties.getMaxBackoffInterval().toMillis(), TimeUnit.SECONDS);
+                .maxBackoffInterval(pulsarProperties.getMaxBackoffInterval().toMillis(), TimeUnit.SECONDS)
+                .statsInterval(pulsarProperties.getStatsInterval().getSeconds(), TimeUnit.SECONDS);
         String token = pulsarProperties.getToken();
         if (StringUtils.hasText(token)) {
             clientBuilder.authentication(AuthenticationFactory.token(token));
@@ -67,6 +71,7 @@ public class PulsarAutoConfiguration {
                 .operationTimeout((int) pulsarProperties.getOperationTimeout().getSeconds(), TimeUnit.SECONDS)
                 .startingBackoffInterval(pulsarProperties.getMaxBackoffInterval().toMillis(), TimeUnit.MILLISECONDS)
                 .maxBackoffInterval(pulsarProperties.getMaxBackoffInterval().toMillis(), TimeUnit.SECONDS)
+                .statsInterval(pulsarProperties.getStatsInterval().getSeconds(), TimeUnit.SECONDS)
                 .build();
     }
 
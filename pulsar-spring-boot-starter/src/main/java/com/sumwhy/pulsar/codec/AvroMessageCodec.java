@@ -0,0 +1,51 @@
+package com.sumwhy.pulsar.codec;
+
+import org.apache.pulsar.client.api.Schema;
+
+/**
+ * <p> @date: 2026-10-18 15:31</p>
+ * <p> avro codec, 基于 pulsar 内置的 avro schema, 需要显式指定名称才会使用 </p>
+ *
+ * @author 何嘉豪
+ */
+public class AvroMessageCodec implements MessageCodec {
+
+    public static final String AVRO = "avro";
+
+    private final ClassValue<Schema<?>> schemas = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return Schema.AVRO(type);
+        }
+    };
+
+    @Override
+    public String getName() {
+        return AVRO;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return false;
+    }
+
+    @Override
+    public Schema<?> schema(Class<?> type) {
+        if (type == null || byte[].class.equals(type)) {
+            return Schema.BYTES;
+        }
+        return schemas.get(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object msg) {
+        return ((Schema<Object>) schemas.get(msg.getClass())).encode(msg);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return type.cast(schemas.get(type).decode(bytes));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.sumwhy.pulsar.codec;
+
+import org.apache.pulsar.client.api.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> @date: 2026-10-18 21:40</p>
+ * <p> 信封的格式, 多条编码后的小消息打包为一条 pulsar 消息, 由消息属性 {@link #PROPERTY} 标记 </p>
+ * <p> 内容为 [版本][varint 长度][消息]...[varint 长度][消息], 100B 左右的消息每条只多占 1 个字节 </p>
+ *
+ * @author 何嘉豪
+ */
+public final class EnvelopeFormat {
+
+    /**
+     * 标记信封的消息属性, 值为格式版本
+     */
+    public static final String PROPERTY = "pulsar-envelope";
+
+    private static final byte VERSION = 1;
+
+    private EnvelopeFormat() {
+    }
+
+    /**
+     * @param msg 消息
+     * @return 是否为信封
+     */
+    public static boolean isEnvelope(Message<?> msg) {
+        return msg.hasProperty(PROPERTY);
+    }
+
+    /**
+     * @param initialSize 初始大小
+     * @return 写入了版本的缓冲区
+     */
+    public static ByteArrayOutputStream newBuffer(int initialSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(initialSize);
+        out.write(VERSION);
+        return out;
+    }
+
+    /**
+     * @return 版本的字符串形式, 作为 {@link #PROPERTY} 的值
+     */
+    public static String version() {
+        return String.valueOf(VERSION);
+    }
+
+    /**
+     * 写入一条消息
+     *
+     * @param out     缓冲区
+     * @param payload 编码后的消息
+     */
+    public static void write(ByteArrayOutputStream out, byte[] payload) {
+        int length = payload.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(payload, 0, payload.length);
+    }
+
+    /**
+     * @param length 消息长度
+     * @return 消息写入后占用的字节数
+     */
+    public static int sizeOf(int length) {
+        int size = 1;
+        for (int value = length >>> 7; value != 0; value >>>= 7) {
+            size++;
+        }
+        return size + length;
+    }
+
+    /**
+     * 拆开信封
+     *
+     * @param envelope 信封的内容
+     * @return 按写入顺序排列的消息
+     */
+    public static List<byte[]> unpack(byte[] envelope) {
+        if (envelope.length == 0 || envelope[0] != VERSION) {
+            throw new IllegalArgumentException("unsupported envelope version "
+                    + (envelope.length == 0 ? "<empty>" : String.valueOf(envelope[0])));
+        }
+        List<byte[]> payloads = new ArrayList<>();
+        int position = 1;
+        while (position < envelope.length) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= envelope.length || shift > 28) {
+                    throw new IllegalArgumentException("malformed envelope at position " + position);
+                }
+                b = envelope[position++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            // 长度可能接近 int 上限, 不能直接与 position 相加
+            if (length < 0 || length > envelope.length - position) {
+                throw new IllegalArgumentException("malformed envelope at position " + position);
+            }
+            byte[] payload = new byte[length];
+            System.arraycopy(envelope, position, payload, 0, length);
+            payloads.add(payload);
+            position += length;
+        }
+        return payloads;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.sumwhy.pulsar.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+import java.io.IOException;
+
+/**
+ * <p> @date: 2026-10-18 15:10</p>
+ * <p> 基于 jackson 的 codec, 根据 ObjectMapper 的 JsonFactory 可以是 json, smile 或 cbor </p>
+ * <p> 对象直接序列化为 byte 数组, 不经过中间的字符串, 每个类型的 ObjectWriter/ObjectReader 只创建一次 </p>
+ *
+ * @author 何嘉豪
+ */
+public class JacksonMessageCodec implements MessageCodec {
+
+    public static final String JSON = "json";
+
+    public static final String SMILE = "smile";
+
+    public static final String CBOR = "cbor";
+
+    private final String name;
+
+    /**
+     * 指定了消息类型时是否使用 pulsar 的 json schema, 只有文本 json 可以开启
+     */
+    private final boolean jsonSchema;
+
+    private final ClassValue<ObjectWriter> writers;
+
+    private final ClassValue<ObjectReader> readers;
+
+    private final ClassValue<Schema<?>> schemas = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return Schema.JSON(type);
+        }
+    };
+
+    public JacksonMessageCodec(String name, ObjectMapper objectMapper, boolean jsonSchema) {
+        this.name = name;
+        this.jsonSchema = jsonSchema;
+        this.writers = new ClassValue<ObjectWriter>() {
+            @Override
+            protected ObjectWriter computeValue(Class<?> type) {
+                return objectMapper.writerFor(type);
+            }
+        };
+        this.readers = new ClassValue<ObjectReader>() {
+            @Override
+            protected ObjectReader computeValue(Class<?> type) {
+                return objectMapper.readerFor(type);
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        // jackson 可以处理任意对象, 只作为兜底, 不参与自动选择
+        return false;
+    }
+
+    @Override
+    public Schema<?> schema(Class<?> type) {
+        if (!jsonSchema || type == null || byte[].class.equals(type)) {
+            return Schema.BYTES;
+        }
+        return schemas.get(type);
+    }
+
+    @Override
+    public byte[] encode(Object msg) {
+        try {
+            return writers.get(msg.getClass()).writeValueAsBytes(msg);
+        } catch (JsonProcessingException e) {
+            throw new SchemaSerializationException(e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            return readers.get(type).readValue(bytes);
+        } catch (IOException e) {
+            throw new SchemaSerializationException(e);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.sumwhy.pulsar.codec;
+
+import com.sumwhy.util.JsonUtil;
+import org.apache.pulsar.client.api.Schema;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p> @date: 2026-10-19 10:10</p>
+ * <p> 默认的 json codec, 委托给 {@link JsonUtil}, 与之前版本的消息格式 (日期格式, null 的处理, 命名方式) 完全一致,
+ * 滚动升级时新旧服务可以互相收发 </p>
+ * <p> 需要自定义 ObjectMapper 时注册名为 {@link MessageCodecRegistry#OBJECT_MAPPER_BEAN_NAME} 的 bean </p>
+ *
+ * @author 何嘉豪
+ */
+public class JsonUtilMessageCodec implements MessageCodec {
+
+    private final ClassValue<Schema<?>> schemas = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return Schema.JSON(type);
+        }
+    };
+
+    @Override
+    public String getName() {
+        return JacksonMessageCodec.JSON;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        // 只作为兜底, 不参与自动选择
+        return false;
+    }
+
+    @Override
+    public Schema<?> schema(Class<?> type) {
+        if (type == null || byte[].class.equals(type)) {
+            return Schema.BYTES;
+        }
+        return schemas.get(type);
+    }
+
+    @Override
+    public byte[] encode(Object msg) {
+        return JsonUtil.jsonValue(msg).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JsonUtil.parseJson(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.sumwhy.pulsar.codec;
+
+import org.apache.pulsar.client.api.Schema;
+
+/**
+ * <p> @date: 2026-10-18 15:02</p>
+ * <p> 消息编解码的扩展点, 注册为 spring bean 即可生效, 与内置 codec 同名时覆盖内置实现 </p>
+ * <p> 生产者通过 {@link com.sumwhy.pulsar.model.ProducerHolder.Builder#codec(String)},
+ * 消费者通过 {@link com.sumwhy.pulsar.annotation.PulsarConsumer#codec()} 按名称选择,
+ * 未指定时根据消息类型自动选择 </p>
+ *
+ * @author 何嘉豪
+ */
+public interface MessageCodec {
+
+    /**
+     * codec 的名称, 全局唯一
+     *
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 没有指定 codec 时, 是否为该类型自动选用此 codec, 所有 codec 都不支持时使用 json
+     *
+     * @param type 消息类型
+     * @return 是否自动选用
+     */
+    boolean supports(Class<?> type);
+
+    /**
+     * 生产者和消费者使用的 schema, 如果返回 {@link Schema#BYTES}, 由 {@link #encode(Object)} 和
+     * {@link #decode(byte[], Class)} 负责编解码, 否则由 schema 直接编解码
+     *
+     * @param type 消息类型
+     * @return schema
+     */
+    Schema<?> schema(Class<?> type);
+
+    /**
+     * 将消息编码为 byte 数组
+     *
+     * @param msg 消息
+     * @return byte 数组
+     */
+    byte[] encode(Object msg);
+
+    /**
+     * 将 byte 数组解码为消息
+     *
+     * @param bytes byte 数组
+     * @param type  消息类型
+     * @param <T>   消息类型
+     * @return 消息
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+
+}
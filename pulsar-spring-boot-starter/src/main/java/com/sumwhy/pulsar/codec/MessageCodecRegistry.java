@@ -0,0 +1,201 @@
+package com.sumwhy.pulsar.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Schema;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> @date: 2026-10-18 15:40</p>
+ * <p> codec 注册中心, 内置 json, smile, cbor, protobuf, avro, 其中 smile, cbor, protobuf 需要引入对应的依赖 </p>
+ * <p> 按类型自动选择的结果会缓存, 发送和消费时不再重复查找 </p>
+ * <p> json 默认委托给 {@link com.sumwhy.util.JsonUtil}, 保持与之前版本相同的消息格式;
+ * 注册名为 {@link #OBJECT_MAPPER_BEAN_NAME} 的 ObjectMapper bean 后改为使用该 ObjectMapper 直接序列化为 byte 数组 </p>
+ * <p> 自定义的 codec 在第一次使用时才从容器中获取, 避免在注册 BeanPostProcessor 阶段被提前创建而跳过代理 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class MessageCodecRegistry {
+
+    /**
+     * json codec 使用的 ObjectMapper 的 bean 名称
+     */
+    public static final String OBJECT_MAPPER_BEAN_NAME = "pulsarObjectMapper";
+
+    private static final String SMILE_FACTORY = "com.fasterxml.jackson.dataformat.smile.SmileFactory";
+
+    private static final String CBOR_FACTORY = "com.fasterxml.jackson.dataformat.cbor.CBORFactory";
+
+    private static final String PROTOBUF_MESSAGE = "com.google.protobuf.GeneratedMessageV3";
+
+    /**
+     * 名称和 codec 的映射, 只在构造和第一次使用时写入
+     */
+    private final Map<String, MessageCodec> codecs = new HashMap<>();
+
+    /**
+     * 参与自动选择的 codec
+     */
+    private final List<MessageCodec> candidates = new ArrayList<>();
+
+    private final ObjectProvider<MessageCodec> messageCodecs;
+
+    private volatile MessageCodec defaultCodec;
+
+    /**
+     * 类型和自动选择结果的缓存
+     */
+    private final ClassValue<MessageCodec> codecsByType = new ClassValue<MessageCodec>() {
+        @Override
+        protected MessageCodec computeValue(Class<?> type) {
+            for (MessageCodec candidate : candidates) {
+                if (candidate.supports(type)) {
+                    return candidate;
+                }
+            }
+            return defaultCodec();
+        }
+    };
+
+    /**
+     * 消息类型为 byte[] 时, 由发送的对象的实际类型决定 codec
+     */
+    private final MessageCodec autoCodec = new AutoMessageCodec();
+
+    public MessageCodecRegistry(ObjectProvider<MessageCodec> messageCodecs,
+                                @Qualifier(OBJECT_MAPPER_BEAN_NAME) ObjectProvider<ObjectMapper> objectMapper) {
+        this.messageCodecs = messageCodecs;
+        ClassLoader classLoader = getClass().getClassLoader();
+        ObjectMapper jsonMapper = objectMapper.getIfAvailable();
+        register(jsonMapper != null ? new JacksonMessageCodec(JacksonMessageCodec.JSON, jsonMapper, true)
+                : new JsonUtilMessageCodec());
+        if (ClassUtils.isPresent(SMILE_FACTORY, classLoader)) {
+            register(new JacksonMessageCodec(JacksonMessageCodec.SMILE, objectMapper(SMILE_FACTORY, classLoader), false));
+        }
+        if (ClassUtils.isPresent(CBOR_FACTORY, classLoader)) {
+            register(new JacksonMessageCodec(JacksonMessageCodec.CBOR, objectMapper(CBOR_FACTORY, classLoader), false));
+        }
+        if (ClassUtils.isPresent(PROTOBUF_MESSAGE, classLoader)) {
+            register(new ProtobufMessageCodec());
+        }
+        register(new AvroMessageCodec());
+    }
+
+    /**
+     * 第一次使用时注册自定义的 codec, 自定义的 codec 覆盖同名的内置实现
+     */
+    private MessageCodec defaultCodec() {
+        MessageCodec codec = defaultCodec;
+        if (codec != null) {
+            return codec;
+        }
+        synchronized (this) {
+            if (defaultCodec == null) {
+                messageCodecs.orderedStream().forEach(this::register);
+                log.debug("已注册的 codec: {}", codecs.keySet());
+                defaultCodec = codecs.get(JacksonMessageCodec.JSON);
+            }
+            return defaultCodec;
+        }
+    }
+
+    /**
+     * 根据名称和消息类型选择 codec
+     *
+     * @param name 名称, 为空时根据消息类型自动选择
+     * @param type 消息类型
+     * @return codec
+     */
+    public MessageCodec codec(String name, Class<?> type) {
+        defaultCodec();
+        if (StringUtils.hasLength(name)) {
+            MessageCodec codec = codecs.get(name);
+            if (codec == null) {
+                throw new IllegalArgumentException("no such codec [" + name + "]");
+            }
+            return codec;
+        }
+        if (type == null || byte[].class.equals(type)) {
+            return autoCodec;
+        }
+        return codecsByType.get(type);
+    }
+
+    /**
+     * 根据名称和消息类型获取 schema
+     *
+     * @param name 名称, 为空时根据消息类型自动选择
+     * @param type 消息类型
+     * @return schema
+     */
+    public Schema<?> schema(String name, Class<?> type) {
+        return codec(name, type).schema(type);
+    }
+
+    private void register(MessageCodec codec) {
+        MessageCodec old = codecs.put(codec.getName(), codec);
+        if (old != null) {
+            candidates.remove(old);
+        }
+        candidates.add(codec);
+    }
+
+    private static ObjectMapper objectMapper(String factoryClassName, ClassLoader classLoader) {
+        return objectMapper((JsonFactory) BeanUtils.instantiateClass(
+                ClassUtils.resolveClassName(factoryClassName, classLoader)));
+    }
+
+    private static ObjectMapper objectMapper(JsonFactory jsonFactory) {
+        return new ObjectMapper(jsonFactory)
+                .findAndRegisterModules()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * 按实际类型委托给自动选择的 codec
+     */
+    private class AutoMessageCodec implements MessageCodec {
+
+        @Override
+        public String getName() {
+            return "auto";
+        }
+
+        @Override
+        public boolean supports(Class<?> type) {
+            return false;
+        }
+
+        @Override
+        public Schema<?> schema(Class<?> type) {
+            return Schema.BYTES;
+        }
+
+        @Override
+        public byte[] encode(Object msg) {
+            return codecsByType.get(msg.getClass()).encode(msg);
+        }
+
+        @Override
+        public <T> T decode(byte[] bytes, Class<T> type) {
+            return codecsByType.get(type).decode(bytes, type);
+        }
+    }
+
+}
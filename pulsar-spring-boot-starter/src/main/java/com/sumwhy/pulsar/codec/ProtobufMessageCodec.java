@@ -0,0 +1,56 @@
+package com.sumwhy.pulsar.codec;
+
+import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.MessageLite;
+import org.apache.pulsar.client.api.Schema;
+
+/**
+ * <p> @date: 2026-10-18 15:24</p>
+ * <p> protobuf codec, 只在 classpath 中存在 protobuf-java 时注册, protobuf 生成的类型会自动选用 </p>
+ *
+ * @author 何嘉豪
+ */
+public class ProtobufMessageCodec implements MessageCodec {
+
+    public static final String PROTOBUF = "protobuf";
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ClassValue<Schema<?>> schemas = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            if (!GeneratedMessageV3.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException(type.getName() + " is not a protobuf message");
+            }
+            return Schema.PROTOBUF((Class) type);
+        }
+    };
+
+    @Override
+    public String getName() {
+        return PROTOBUF;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return GeneratedMessageV3.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public Schema<?> schema(Class<?> type) {
+        if (type == null || byte[].class.equals(type)) {
+            return Schema.BYTES;
+        }
+        return schemas.get(type);
+    }
+
+    @Override
+    public byte[] encode(Object msg) {
+        return ((MessageLite) msg).toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return type.cast(schemas.get(type).decode(bytes));
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.sumwhy.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+
+/**
+ * <p> @date: 2026-10-19 15:40</p>
+ * <p> 异步确认并记录失败, 确认失败时消息会在重新连接或 ackTimeout 后重新投递, 不记录时只能从重复消费中发现 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+final class Acknowledgements {
+
+    private Acknowledgements() {
+    }
+
+    /**
+     * @param consumer 消费者
+     * @param msg      消息
+     */
+    static void acknowledge(Consumer<?> consumer, Message<?> msg) {
+        consumer.acknowledgeAsync(msg).exceptionally(e -> {
+            log.warn("messageId:{} 确认失败, 消息会重新投递", msg.getMessageId(), e);
+            return null;
+        });
+    }
+
+    /**
+     * @param consumer 消费者
+     * @param messages 一批消息
+     */
+    static void acknowledge(Consumer<?> consumer, Messages<?> messages) {
+        consumer.acknowledgeAsync(messages).exceptionally(e -> {
+            log.warn("consumer:{} 的 {} 条消息批量确认失败, 消息会重新投递", consumer.getConsumerName(), messages.size(), e);
+            return null;
+        });
+    }
+
+}
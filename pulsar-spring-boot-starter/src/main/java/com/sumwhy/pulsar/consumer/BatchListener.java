@@ -0,0 +1,130 @@
+package com.sumwhy.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p> @date: 2026-10-18 23:10</p>
+ * <p> 批量消费的拉取循环, 通过 batchReceiveAsync 拉取一批消息, 处理完成后再拉取下一批 </p>
+ * <p> 消费方法在独立的线程中调用, 不占用 client 的 io 线程; 消费者关闭后拉取失败, 循环随之结束 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+final class BatchListener {
+
+    /**
+     * 拉取失败后重试的间隔, 单位毫秒
+     */
+    private static final long RETRY_INTERVAL_MILLIS = 1000L;
+
+    private final Consumer<?> consumer;
+
+    private final HandlerInvoker handlerInvoker;
+
+    private final Function<Messages<?>, Object> decoder;
+
+    private final ExecutorService executor;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param consumer       没有设置 listener 的消费者
+     * @param handlerInvoker 消费方法
+     * @param decoder        将一批消息转换为方法的第一个参数
+     */
+    BatchListener(Consumer<?> consumer, HandlerInvoker handlerInvoker, Function<Messages<?>, Object> decoder) {
+        this.consumer = consumer;
+        this.handlerInvoker = handlerInvoker;
+        this.decoder = decoder;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pulsar-batch-" + consumer.getConsumerName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        executor.execute(this::receive);
+    }
+
+    /**
+     * 停止拉取并等待正在处理的一批消息处理完成, 之后才可以关闭消费者, 否则这一批无法确认
+     *
+     * @param timeoutMillis 最长等待时间, 单位毫秒
+     */
+    void close(long timeoutMillis) {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("consumer:{} 的批量消费在 {} ms 内没有处理完成", consumer.getConsumerName(), timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void receive() {
+        if (!running) {
+            return;
+        }
+        consumer.batchReceiveAsync().whenCompleteAsync((messages, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                if (!running || cause instanceof PulsarClientException.AlreadyClosedException) {
+                    log.info("consumer:{} 已关闭, 停止批量拉取", consumer.getConsumerName());
+                    executor.shutdown();
+                    return;
+                }
+                log.error("consumer:{} 批量拉取消息失败, {} ms 后重试", consumer.getConsumerName(),
+                        RETRY_INTERVAL_MILLIS, cause);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                consume(messages);
+            }
+            receive();
+        }, executor);
+    }
+
+    private void consume(Messages<?> messages) {
+        // 等待超时时可能是空的一批
+        if (messages.size() == 0) {
+            return;
+        }
+        try {
+            Object args = decoder.apply(messages);
+            // 三个参数的方法自行确认
+            if (handlerInvoker.isSelfAck()) {
+                handlerInvoker.invoke(args, consumer, messages);
+                return;
+            }
+            Object result = handlerInvoker.invoke(args);
+            if (ConsumerAggregator.REACTOR_PRESENT && ReactiveConsumerSupport.isPublisher(result)) {
+                // 返回 Publisher 时在其完成后确认
+                ReactiveConsumerSupport.acknowledgeOnCompletion(result, consumer, messages);
+                return;
+            }
+            Acknowledgements.acknowledge(consumer, messages);
+        } catch (Exception e) {
+            // 整批否认, 重新投递时已处理的消息会再次消费
+            consumer.negativeAcknowledge(messages);
+            log.error("consumer:{} 的 {} 条消息批量消费失败,原因:{}", consumer.getConsumerName(), messages.size(),
+                    e.getMessage(), e);
+        }
+    }
+
+}
@@ -1,20 +1,33 @@
 package com.sumwhy.pulsar.consumer;
 
+import com.sumwhy.pulsar.annotation.BatchReceive;
+import com.sumwhy.pulsar.annotation.CumulativeAck;
 import com.sumwhy.pulsar.annotation.DeadLetter;
+import com.sumwhy.pulsar.annotation.Envelope;
 import com.sumwhy.pulsar.annotation.PulsarConsumer;
+import com.sumwhy.pulsar.codec.EnvelopeFormat;
+import com.sumwhy.pulsar.codec.MessageCodec;
+import com.sumwhy.pulsar.codec.MessageCodecRegistry;
 import com.sumwhy.pulsar.consumer.collector.ConsumerCollector;
 import com.sumwhy.pulsar.exception.EmptyTopicException;
 import com.sumwhy.pulsar.exception.InitFailedException;
 import com.sumwhy.pulsar.properties.GlobalConsumerProperties;
-import com.sumwhy.pulsar.util.SchemaUtil;
 import com.sumwhy.pulsar.util.TopicBuilder;
-import com.sumwhy.util.JsonUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.common.schema.SchemaType;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.EmbeddedValueResolverAware;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.util.StringValueResolver;
 
@@ -22,10 +35,12 @@ import javax.annotation.PostConstruct;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.function.Function;
 
 /**
  * <p> @date: 2021-04-07 10:04</p>
@@ -37,7 +52,13 @@ import java.util.stream.Collectors;
 @Configuration
 @DependsOn({"pulsarClient", "consumerCollector"})
 @ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
-public class ConsumerAggregator implements EmbeddedValueResolverAware {
+public class ConsumerAggregator implements EmbeddedValueResolverAware, ApplicationEventPublisherAware {
+
+    /**
+     * 是否引入了 reactor, 引入时支持返回 Publisher 或参数为 Flux 的消费方法
+     */
+    static final boolean REACTOR_PRESENT =
+            ClassUtils.isPresent("reactor.core.publisher.Flux", ConsumerAggregator.class.getClassLoader());
 
     /**
      * 构造器注入, 消费者收集器
@@ -56,154 +77,612 @@ public class ConsumerAggregator implements EmbeddedValueResolverAware {
 
     private final TopicBuilder topicBuilder;
 
+    private final MessageCodecRegistry codecRegistry;
+
     /**
      * 用于处理 spEL
      */
     private StringValueResolver stringValueResolver;
 
-    private List<Consumer<?>> consumers;
+    private final List<Consumer<?>> consumers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 所有消费者订阅完成的信号
+     */
+    private final CompletableFuture<Void> subscription = new CompletableFuture<>();
+
+    private ApplicationEventPublisher applicationEventPublisher;
 
-    public ConsumerAggregator(ConsumerCollector consumerCollector, PulsarClient pulsarClient, GlobalConsumerProperties globalConsumerProperties, TopicBuilder topicBuilder) {
+    public ConsumerAggregator(ConsumerCollector consumerCollector, PulsarClient pulsarClient, GlobalConsumerProperties globalConsumerProperties, TopicBuilder topicBuilder, MessageCodecRegistry codecRegistry) {
         this.consumerCollector = consumerCollector;
         this.pulsarClient = pulsarClient;
         this.globalConsumerProperties = globalConsumerProperties;
         this.topicBuilder = topicBuilder;
+        this.codecRegistry = codecRegistry;
     }
 
     @PostConstruct
     public void init() {
         Map<String, ConsumerHolder> consumerHolderMapping = consumerCollector.getConsumerHolderMapping();
-        consumers = consumerHolderMapping.entrySet().stream()
-                .map(entry -> subscribe(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+        if (globalConsumerProperties.isSubscribeInBackground()) {
+            // 后台订阅, 是否完成由 ConsumerSubscriptionHealthIndicator 报告
+            Thread subscriber = new Thread(() -> {
+                try {
+                    subscribeAll(consumerHolderMapping);
+                } catch (RuntimeException e) {
+                    log.error("后台初始化消费者失败", e);
+                }
+            }, "pulsar-consumer-subscriber");
+            subscriber.setDaemon(true);
+            subscriber.start();
+        } else {
+            subscribeAll(consumerHolderMapping);
+        }
+    }
+
+    /**
+     * 应用启动完成后后台订阅才失败时, 将 readiness 设置为拒绝流量.
+     * 启动完成前的状态会被 spring boot 随后发布的 ACCEPTING_TRAFFIC 覆盖, 这段时间由健康检查报告
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (subscription.isDone()) {
+            if (subscription.isCompletedExceptionally()) {
+                log.warn("后台订阅消费者在应用启动完成前已失败, 请将 pulsarConsumers 健康检查加入 readiness 组");
+            }
+            return;
+        }
+        subscription.whenComplete((v, e) -> {
+            if (e != null) {
+                AvailabilityChangeEvent.publish(applicationEventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+            }
+        });
+    }
+
+    /**
+     * 并行异步订阅所有消费者, 并发数和总超时时间由 {@link GlobalConsumerProperties} 控制
+     *
+     * @param consumerHolderMapping consumer 名称和 consumer 信息的映射
+     */
+    private void subscribeAll(Map<String, ConsumerHolder> consumerHolderMapping) {
+        long begin = System.nanoTime();
+        long deadline = begin + globalConsumerProperties.getSubscribeTimeout().toNanos();
+        Semaphore permits = new Semaphore(Math.max(1, globalConsumerProperties.getSubscribeConcurrency()));
+        List<CompletableFuture<? extends Consumer<?>>> futures = new ArrayList<>(consumerHolderMapping.size());
+        try {
+            for (Map.Entry<String, ConsumerHolder> entry : consumerHolderMapping.entrySet()) {
+                int concurrency = concurrency(entry.getKey(), entry.getValue().getPulsarConsumer());
+                for (int i = 0; i < concurrency; i++) {
+                    if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                        throw new TimeoutException("等待订阅许可超时");
+                    }
+                    String consumerName = concurrency == 1 ? entry.getKey() : entry.getKey() + "-" + i;
+                    futures.add(subscribe(consumerName, entry.getValue())
+                            .whenComplete((consumer, e) -> permits.release()));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw subscribeFailed(futures, new InitFailedException("初始化消费者被中断", e));
+        } catch (ExecutionException | TimeoutException e) {
+            throw subscribeFailed(futures, new InitFailedException("初始化消费者失败",
+                    e instanceof ExecutionException ? e.getCause() : e));
+        } catch (RuntimeException e) {
+            throw subscribeFailed(futures, e);
+        }
+        log.info("初始化 {} 个消费者完成, 总耗时 {} ms", futures.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        subscription.complete(null);
+    }
+
+    private RuntimeException subscribeFailed(List<CompletableFuture<? extends Consumer<?>>> futures, RuntimeException e) {
+        futures.forEach(future -> future.thenAccept(Consumer::closeAsync));
+        subscription.completeExceptionally(e);
+        return e;
+    }
+
+    /**
+     * 解析并校验并发消费数
+     *
+     * @param consumerName   consumer 名称
+     * @param pulsarConsumer 消费者配置
+     * @return 需要创建的消费者数量
+     */
+    private int concurrency(String consumerName, PulsarConsumer pulsarConsumer) {
+        String value = stringValueResolver.resolveStringValue(pulsarConsumer.concurrency());
+        int concurrency;
+        try {
+            concurrency = StringUtils.hasText(value) ? Integer.parseInt(value.trim()) : 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("consumer [" + consumerName + "] has an invalid concurrency: " + value, e);
+        }
+        if (concurrency < 1) {
+            throw new IllegalStateException("consumer [" + consumerName + "] has an invalid concurrency: " + value);
+        }
+        SubscriptionType subscriptionType = pulsarConsumer.subscriptionType();
+        if (concurrency > 1 && subscriptionType != SubscriptionType.Shared
+                && subscriptionType != SubscriptionType.Key_Shared) {
+            throw new IllegalStateException("consumer [" + consumerName + "] sets concurrency to " + concurrency
+                    + ", which requires a Shared or Key_Shared subscription, but got " + subscriptionType);
+        }
+        return concurrency;
+    }
+
+    /**
+     * 解析并校验按 key 分道的通道数
+     *
+     * @param consumerName   consumer 名称
+     * @param pulsarConsumer 消费者配置
+     * @param pulling        是否为批量消费或参数为 Flux 的方法, 这些方法不使用 listener
+     * @return 通道数, 1 表示不分道
+     */
+    private int lanes(String consumerName, PulsarConsumer pulsarConsumer, boolean pulling) {
+        String value = stringValueResolver.resolveStringValue(pulsarConsumer.lanes());
+        int lanes;
+        try {
+            lanes = StringUtils.hasText(value) ? Integer.parseInt(value.trim()) : 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("consumer [" + consumerName + "] has an invalid lanes: " + value, e);
+        }
+        if (lanes < 1) {
+            throw new IllegalStateException("consumer [" + consumerName + "] has an invalid lanes: " + value);
+        }
+        SubscriptionType subscriptionType = pulsarConsumer.subscriptionType();
+        if (lanes > 1 && subscriptionType != SubscriptionType.Exclusive
+                && subscriptionType != SubscriptionType.Failover) {
+            throw new IllegalStateException("consumer [" + consumerName + "] sets lanes to " + lanes
+                    + ", which requires an Exclusive or Failover subscription, but got " + subscriptionType);
+        }
+        if (lanes > 1 && pulling) {
+            throw new IllegalStateException("consumer [" + consumerName + "] sets lanes to " + lanes
+                    + ", which is not supported by batch or Flux consumers");
+        }
+        return lanes;
+    }
+
+    /**
+     * 校验累积确认的配置
+     *
+     * @param consumerName   consumer 名称
+     * @param pulsarConsumer 消费者配置
+     * @param unsupported    是否为批量消费, 参数为 Flux 或自行确认的方法
+     */
+    private static void checkCumulativeAck(String consumerName, PulsarConsumer pulsarConsumer, boolean unsupported) {
+        SubscriptionType subscriptionType = pulsarConsumer.subscriptionType();
+        if (subscriptionType != SubscriptionType.Exclusive && subscriptionType != SubscriptionType.Failover) {
+            throw new IllegalStateException("consumer [" + consumerName + "] enables cumulative ack, "
+                    + "which requires an Exclusive or Failover subscription, but got " + subscriptionType);
+        }
+        if (unsupported) {
+            throw new IllegalStateException("consumer [" + consumerName + "] enables cumulative ack, "
+                    + "which is not supported by batch, Flux or self-acknowledging consumers");
+        }
+        CumulativeAck cumulativeAck = pulsarConsumer.cumulativeAck();
+        if (cumulativeAck.maxMessages() < 1 || cumulativeAck.maxDelay() <= 0) {
+            throw new IllegalStateException("consumer [" + consumerName + "] has an invalid cumulative ack: "
+                    + "maxMessages and maxDelay must be positive");
+        }
     }
 
     /**
-     * 初始化 consumer
+     * 异步初始化 consumer
      *
      * @param consumerName   consumer 名称
      * @param consumerHolder consumer 信息
      * @return 消费者
      */
-    private Consumer<?> subscribe(String consumerName, ConsumerHolder consumerHolder) {
+    private CompletableFuture<? extends Consumer<?>> subscribe(String consumerName, ConsumerHolder consumerHolder) {
         PulsarConsumer pulsarConsumer = consumerHolder.getPulsarConsumer();
         String topic = stringValueResolver.resolveStringValue(pulsarConsumer.topic());
         if (!StringUtils.hasLength(topic)) {
             throw new EmptyTopicException(consumerName);
         }
-        try {
-            // 判断是否需要重试, 默认是需要的,但对于腾讯云来说 死信和重试队列的名称需要自己指定
-            boolean retryEnable = pulsarConsumer.retryEnable();
-            String tenant = stringValueResolver.resolveStringValue(pulsarConsumer.tenant());
-            String namespace = stringValueResolver.resolveStringValue(pulsarConsumer.namespace());
-            String subscriptionName = StringUtils.hasLength(pulsarConsumer.subscriptionName()) ?
-                    pulsarConsumer.subscriptionName() : "subscription_" + topic;
-            Schema<?> schema = SchemaUtil.schema(pulsarConsumer.msgType());
-            ConsumerBuilder<?> consumerBuilder = pulsarClient.newConsumer(schema)
-                    .consumerName(consumerName).topic(topicBuilder.buildTopicUrl(tenant, namespace, topic))
-                    .subscriptionType(pulsarConsumer.subscriptionType())
-                    .subscriptionName(subscriptionName).enableRetry(retryEnable);
-            if (retryEnable) {
-                // 获取死信队列策略,并进行设置
-                DeadLetter deadLetter = pulsarConsumer.deadLetter();
-                int maxRedeliverCount = deadLetter.maxRedeliverCount();
-                String deadLetterTopic = deadLetter.deadLetterTopic();
-                String retryLetterTopic = deadLetter.retryLetterTopic();
-                DeadLetterPolicy deadLetterPolicy;
-                if (!StringUtils.hasLength(deadLetterTopic)
-                        && !StringUtils.hasLength(retryLetterTopic)) {
-                    // 对于没有设置的场景, pulsar 将会在 retryEnable 时,自动初始化一个默认的死信策略
-                    String prefix;
-                    if (pulsarConsumer.createDeadLetterByAdmin()) {
-                        prefix = topicBuilder.getPrefix(tenant, namespace) + "subscription_" + topic;
-                    } else {
-                        prefix = topicBuilder.getPrefix(tenant, namespace) + topic;
-                    }
-                    String deadQueueSuffix = topicBuilder.getDeadQueueSuffix();
-                    String retryQueueSuffix = topicBuilder.getRetryQueueSuffix();
-                    String lowercaseStr = pulsarConsumer.lowercase();
-                    if (StringUtils.hasLength(lowercaseStr)) {
-                        // 只有等于 true 是 返回 true （ignoreCase）
-                        boolean lowercase = Boolean.parseBoolean(lowercaseStr);
-                        deadQueueSuffix = lowercase ? deadQueueSuffix.toLowerCase() : deadQueueSuffix.toUpperCase();
-                        retryQueueSuffix = lowercase ? retryQueueSuffix.toLowerCase() : retryQueueSuffix.toUpperCase();
-                    }
-                    deadLetterPolicy = DeadLetterPolicy.builder()
-                            .deadLetterTopic(prefix + deadQueueSuffix)
-                            .retryLetterTopic(prefix + retryQueueSuffix)
-                            .maxRedeliverCount(maxRedeliverCount).build();
+        // 判断是否需要重试, 默认是需要的,但对于腾讯云来说 死信和重试队列的名称需要自己指定
+        boolean retryEnable = pulsarConsumer.retryEnable();
+        String tenant = stringValueResolver.resolveStringValue(pulsarConsumer.tenant());
+        String namespace = stringValueResolver.resolveStringValue(pulsarConsumer.namespace());
+        String subscriptionName = StringUtils.hasLength(pulsarConsumer.subscriptionName()) ?
+                pulsarConsumer.subscriptionName() : "subscription_" + topic;
+        MessageCodec codec = codecRegistry.codec(pulsarConsumer.codec(), pulsarConsumer.msgType());
+        Schema<?> schema = codec.schema(pulsarConsumer.msgType());
+        ConsumerBuilder<?> consumerBuilder = pulsarClient.newConsumer(schema)
+                .consumerName(consumerName).topic(topicBuilder.buildTopicUrl(tenant, namespace, topic))
+                .subscriptionType(pulsarConsumer.subscriptionType())
+                .subscriptionName(subscriptionName).enableRetry(retryEnable);
+        if (retryEnable) {
+            // 获取死信队列策略,并进行设置
+            DeadLetter deadLetter = pulsarConsumer.deadLetter();
+            int maxRedeliverCount = deadLetter.maxRedeliverCount();
+            String deadLetterTopic = deadLetter.deadLetterTopic();
+            String retryLetterTopic = deadLetter.retryLetterTopic();
+            DeadLetterPolicy deadLetterPolicy;
+            if (!StringUtils.hasLength(deadLetterTopic)
+                    && !StringUtils.hasLength(retryLetterTopic)) {
+                // 对于没有设置的场景, pulsar 将会在 retryEnable 时,自动初始化一个默认的死信策略
+                String prefix;
+                if (pulsarConsumer.createDeadLetterByAdmin()) {
+                    prefix = topicBuilder.getPrefix(tenant, namespace) + "subscription_" + topic;
                 } else {
-                    DeadLetterPolicy.DeadLetterPolicyBuilder builder = DeadLetterPolicy.builder();
-                    builder.maxRedeliverCount(maxRedeliverCount);
-                    if (StringUtils.hasLength(retryLetterTopic)) {
-                        builder.retryLetterTopic(retryLetterTopic);
-                    }
-                    if (StringUtils.hasLength(deadLetterTopic)) {
-                        builder.deadLetterTopic(deadLetterTopic);
-                    }
-                    deadLetterPolicy = builder.build();
+                    prefix = topicBuilder.getPrefix(tenant, namespace) + topic;
+                }
+                String deadQueueSuffix = topicBuilder.getDeadQueueSuffix();
+                String retryQueueSuffix = topicBuilder.getRetryQueueSuffix();
+                String lowercaseStr = pulsarConsumer.lowercase();
+                if (StringUtils.hasLength(lowercaseStr)) {
+                    // 只有等于 true 是 返回 true （ignoreCase）
+                    boolean lowercase = Boolean.parseBoolean(lowercaseStr);
+                    deadQueueSuffix = lowercase ? deadQueueSuffix.toLowerCase() : deadQueueSuffix.toUpperCase();
+                    retryQueueSuffix = lowercase ? retryQueueSuffix.toLowerCase() : retryQueueSuffix.toUpperCase();
+                }
+                deadLetterPolicy = DeadLetterPolicy.builder()
+                        .deadLetterTopic(prefix + deadQueueSuffix)
+                        .retryLetterTopic(prefix + retryQueueSuffix)
+                        .maxRedeliverCount(maxRedeliverCount).build();
+            } else {
+                DeadLetterPolicy.DeadLetterPolicyBuilder builder = DeadLetterPolicy.builder();
+                builder.maxRedeliverCount(maxRedeliverCount);
+                if (StringUtils.hasLength(retryLetterTopic)) {
+                    builder.retryLetterTopic(retryLetterTopic);
                 }
-                consumerBuilder.deadLetterPolicy(deadLetterPolicy);
+                if (StringUtils.hasLength(deadLetterTopic)) {
+                    builder.deadLetterTopic(deadLetterTopic);
+                }
+                deadLetterPolicy = builder.build();
             }
-            // 如果没有设置 ackTimeout,就不进行设置
-            if (!Duration.ZERO.equals(globalConsumerProperties.getAckTimeout())) {
-                consumerBuilder.ackTimeout(globalConsumerProperties.getAckTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            consumerBuilder.deadLetterPolicy(deadLetterPolicy);
+        }
+        // 分块消息的组装限制, 2.7 的 api 名称为 maxPendingChuckedMessage
+        consumerBuilder.maxPendingChuckedMessage(pulsarConsumer.maxPendingChunkedMessage())
+                .autoAckOldestChunkedMessageOnQueueFull(pulsarConsumer.autoAckOldestChunkedMessageOnQueueFull())
+                .expireTimeOfIncompleteChunkedMessage(pulsarConsumer.expireTimeOfIncompleteChunkedMessage(),
+                        TimeUnit.MILLISECONDS);
+        // 如果没有设置 ackTimeout,就不进行设置
+        if (!Duration.ZERO.equals(globalConsumerProperties.getAckTimeout())) {
+            consumerBuilder.ackTimeout(globalConsumerProperties.getAckTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // 确认都是异步发送, 分组时间内的确认合并为一次请求
+        if (pulsarConsumer.acknowledgmentGroupTime() >= 0) {
+            consumerBuilder.acknowledgmentGroupTime(pulsarConsumer.acknowledgmentGroupTime(), TimeUnit.MILLISECONDS);
+        }
+        Method handler = consumerHolder.getHandler();
+        // 参数为 Flux 的方法不使用 listener, 订阅完成后按需拉取
+        boolean fluxHandler = REACTOR_PRESENT && ReactiveConsumerSupport.isFluxHandler(handler);
+        Envelope envelope = pulsarConsumer.envelope();
+        boolean listMode = envelope.mode() == Envelope.Mode.LIST;
+        // 只有 BYTES schema 的 producer 会发送信封, 其他 schema 不识别信封
+        boolean bytesSchema = schema.getSchemaInfo().getType() == SchemaType.BYTES;
+        if (listMode && !bytesSchema) {
+            throw new IllegalStateException("consumer [" + consumerName + "] uses envelope mode LIST, "
+                    + "but its schema is " + schema.getSchemaInfo().getType() + " instead of BYTES");
+        }
+        if (listMode && !List.class.isAssignableFrom(handler.getParameterTypes()[0])) {
+            throw new IllegalStateException("consumer [" + consumerName + "] uses envelope mode LIST, "
+                    + "but the first parameter of " + handler + " is not a List");
+        }
+        boolean batch = pulsarConsumer.batch();
+        if (batch) {
+            // 批量消费不使用 listener, 订阅完成后循环拉取
+            Class<?> parameterType = handler.getParameterTypes()[0];
+            if (!List.class.isAssignableFrom(parameterType) && !Messages.class.isAssignableFrom(parameterType)) {
+                throw new IllegalStateException("consumer [" + consumerName + "] is a batch consumer, "
+                        + "but the first parameter of " + handler + " is neither a List nor Messages");
             }
-            consumerBuilder.messageListener((consumer, msg) -> {
-                try {
-                    // 执行注册得方法
-                    Method handler = consumerHolder.getHandler();
-                    Object invoker = consumerHolder.getInvoker();
-                    Object args = msg.getValue();
-                    if (args instanceof byte[]) {
-                        Class<?>[] parameterTypes = handler.getParameterTypes();
-                        Class<?> parameterType = parameterTypes[0];
-                        if (!parameterType.equals(args.getClass())) {
-                            String json = new String(((byte[]) args), StandardCharsets.UTF_8);
-                            if (CharSequence.class.isAssignableFrom(parameterType)) {
-                                args = json;
-                            } else {
-                                args = JsonUtil.parseJson(json, parameterType);
-                            }
-                        }
-                    }
-                    int parameterCount = handler.getParameterCount();
-                    // 如果是一个参数
-                    if (parameterCount == 1) {
-                        handler.invoke(invoker, args);
-                    }
-                    // 三个参数的场景
-                    if (parameterCount == 3) {
-                        handler.invoke(invoker, args, consumer, msg);
+            BatchReceive batchReceive = pulsarConsumer.batchReceive();
+            consumerBuilder.batchReceivePolicy(BatchReceivePolicy.builder()
+                    .maxNumMessages(batchReceive.maxNumMessages())
+                    .maxNumBytes(batchReceive.maxNumBytes())
+                    .timeout(batchReceive.timeout(), TimeUnit.MILLISECONDS)
+                    .build());
+        }
+        Class<?> declaredType = listMode || fluxHandler || batch
+                ? ResolvableType.forMethodParameter(handler, 0).getGeneric(0).resolve(Object.class)
+                : handler.getParameterTypes()[0];
+        // Flux<ReceivedMessage<T>> 由消费方法自行确认, 按 T 解码
+        boolean explicitAck = fluxHandler && ReceivedMessage.class.equals(declaredType);
+        Class<?> elementType = explicitAck
+                ? ResolvableType.forMethodParameter(handler, 0).getGeneric(0, 0).resolve(Object.class)
+                : declaredType;
+        int laneCount = lanes(consumerName, pulsarConsumer, fluxHandler || batch);
+        CumulativeAck cumulativeAck = pulsarConsumer.cumulativeAck();
+        if (cumulativeAck.enabled()) {
+            checkCumulativeAck(consumerName, pulsarConsumer, fluxHandler || batch
+                    || consumerHolder.getHandlerInvoker().isSelfAck());
+        }
+        KeyStripedDispatcher dispatcher = null;
+        if (!fluxHandler && !batch) {
+            HandlerInvoker handlerInvoker = consumerHolder.getHandlerInvoker();
+            // 解码方式在订阅时确定, 消费时不再判断参数类型
+            Function<Object, Object> decoder = decoder(handlerInvoker.getParameterType(), codec, bytesSchema);
+            if (laneCount > 1 || cumulativeAck.enabled()) {
+                // 三个参数的方法自行确认, 只分道; 没有开启累积确认时水位每次推进都确认
+                dispatcher = new KeyStripedDispatcher(consumerName, laneCount, !handlerInvoker.isSelfAck(),
+                        globalConsumerProperties.getLaneRedeliveryDelay().toMillis(),
+                        cumulativeAck.enabled() ? cumulativeAck.maxMessages() : 1, cumulativeAck.maxDelay(),
+                        pulsarConsumer.receiverQueueSize(),
+                        laneHandler(consumerHolder, envelope, elementType, codec, decoder, bytesSchema));
+                consumerBuilder.messageListener(dispatcher::dispatch);
+            } else {
+                consumerBuilder.messageListener((consumer, msg) -> {
+                    if (listMode || bytesSchema && EnvelopeFormat.isEnvelope(msg)) {
+                        consumeEnvelope(consumer, msg, consumerHolder, envelope, elementType, codec);
                         return;
                     }
-                    consumer.acknowledge(msg);
-                } catch (Exception e) {
-                    // 捕获到异常, 取消消费确认(直接投递到重试队列)
-                    consumer.negativeAcknowledge(msg);
-                    log.error("messageId:{} 的消息消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+                    try {
+                        Object args = decoder.apply(msg.getValue());
+                        // 三个参数的方法自行确认
+                        if (handlerInvoker.isSelfAck()) {
+                            handlerInvoker.invoke(args, consumer, msg);
+                            return;
+                        }
+                        Object result = handlerInvoker.invoke(args);
+                        if (REACTOR_PRESENT && ReactiveConsumerSupport.isPublisher(result)) {
+                            // 返回 Publisher 时在其完成后确认
+                            ReactiveConsumerSupport.acknowledgeOnCompletion(result, consumer, msg);
+                            return;
+                        }
+                        Acknowledgements.acknowledge(consumer, msg);
+                    } catch (Exception e) {
+                        // 捕获到异常, 取消消费确认(直接投递到重试队列)
+                        consumer.negativeAcknowledge(msg);
+                        log.error("messageId:{} 的消息消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+                    }
+                });
+            }
+        }
+        KeyStripedDispatcher keyStripedDispatcher = dispatcher;
+        return consumerBuilder.subscribeAsync().whenComplete((subscribe, e) -> {
+            if (e != null) {
+                log.error("初始化 topic 为 [{}] 的消费者失败", topic, e);
+                if (keyStripedDispatcher != null) {
+                    keyStripedDispatcher.close(0L);
                 }
-            });
-            Consumer<?> subscribe = consumerBuilder.subscribe();
+                return;
+            }
             log.debug("初始化 topic 为 [{}] 的消费者成功", topic);
+            if (fluxHandler) {
+                ReactiveConsumerSupport.subscribeFlux(subscribe, consumerHolder, msg ->
+                        Message.class.isAssignableFrom(elementType) ? Collections.<Object>singletonList(msg)
+                                : unpack(msg, elementType, codec, bytesSchema), explicitAck);
+            }
+            BatchListener batchListener = batch ? new BatchListener(subscribe, consumerHolder.getHandlerInvoker(),
+                    batchDecoder(handler.getParameterTypes()[0], elementType, codec, bytesSchema)) : null;
+            if (batchListener != null) {
+                batchListener.start();
+            }
+            consumers.add(subscribe);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (batchListener != null) {
+                    // 先等当前一批处理完成, 否则关闭后无法确认
+                    batchListener.close(globalConsumerProperties.getShutdownTimeout().toMillis());
+                }
+                if (keyStripedDispatcher != null) {
+                    keyStripedDispatcher.close(globalConsumerProperties.getShutdownTimeout().toMillis());
+                }
                 try {
                     subscribe.close();
-                } catch (PulsarClientException e) {
-                    log.error("停止消费者失败,consumer:{}", subscribe.getConsumerName(), e);
+                } catch (PulsarClientException ex) {
+                    log.error("停止消费者失败,consumer:{}", subscribe.getConsumerName(), ex);
                 }
             }, "shutdown-consumer"));
-            return subscribe;
-        } catch (PulsarClientException e) {
-            log.error("初始化 topic 为 [{}] 的消费者失败", topic, e);
-            throw new InitFailedException("初始化 topic 为 [" + topic + "] 的消费者失败", e);
+        });
+    }
+
+    /**
+     * 逐条或整批消费信封中的消息, 部分失败时按 {@link Envelope#failurePolicy()} 否认或跳过
+     * <p>
+     * 三个参数的方法自行确认, 收到的 msg 为整个信封, 确认一次即确认信封中的全部消息
+     *
+     * @param consumer       消费者
+     * @param msg            信封, LIST 模式下也可能是普通消息
+     * @param consumerHolder 消费方法
+     * @param envelope       信封的消费配置
+     * @param elementType    信封中消息的类型
+     * @param codec          编解码方式
+     */
+    private static void consumeEnvelope(Consumer<?> consumer, Message<?> msg, ConsumerHolder consumerHolder,
+                                        Envelope envelope, Class<?> elementType, MessageCodec codec) {
+        boolean redeliver = envelope.failurePolicy() == Envelope.FailurePolicy.REDELIVER;
+        try {
+            List<Object> results = invokeEnvelope(consumer, msg, consumerHolder.getHandlerInvoker(), envelope,
+                    elementType, codec);
+            if (consumerHolder.getHandlerInvoker().isSelfAck()) {
+                return;
+            }
+            if (REACTOR_PRESENT && results.stream().anyMatch(ReactiveConsumerSupport::isPublisher)) {
+                // 返回 Publisher 时在全部完成后确认
+                ReactiveConsumerSupport.acknowledgeOnCompletion(results, consumer, msg, redeliver);
+                return;
+            }
+            Acknowledgements.acknowledge(consumer, msg);
+        } catch (Exception e) {
+            consumer.negativeAcknowledge(msg);
+            log.error("messageId:{} 的信封消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 {@link Envelope#mode()} 调用消费方法, 不确认, 只在 BYTES schema 下调用
+     *
+     * @param consumer       消费者
+     * @param msg            信封, LIST 模式下也可能是普通消息
+     * @param handlerInvoker 消费方法
+     * @param envelope       信封的消费配置
+     * @param elementType    信封中消息的类型
+     * @param codec          编解码方式
+     * @return 每次调用的返回值
+     * @throws Exception 整批调用失败, 或逐条调用时 REDELIVER 策略下第一条消息的失败
+     */
+    private static List<Object> invokeEnvelope(Consumer<?> consumer, Message<?> msg, HandlerInvoker handlerInvoker,
+                                               Envelope envelope, Class<?> elementType, MessageCodec codec)
+            throws Exception {
+        boolean selfAck = handlerInvoker.isSelfAck();
+        List<Object> values = unpack(msg, elementType, codec, true);
+        List<Object> results = new ArrayList<>();
+        if (envelope.mode() == Envelope.Mode.LIST) {
+            results.add(selfAck ? handlerInvoker.invoke(values, consumer, msg) : handlerInvoker.invoke(values));
+            return results;
+        }
+        int failed = 0;
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            try {
+                results.add(selfAck ? handlerInvoker.invoke(value, consumer, msg) : handlerInvoker.invoke(value));
+            } catch (Exception e) {
+                if (envelope.failurePolicy() == Envelope.FailurePolicy.REDELIVER) {
+                    throw e;
+                }
+                failed++;
+                log.error("messageId:{} 的信封中第 {} 条消息消费失败, 已跳过,原因:{}", msg.getMessageId(), i,
+                        e.getMessage(), e);
+            }
+        }
+        if (failed > 0) {
+            log.warn("messageId:{} 的信封共 {} 条消息, 跳过了 {} 条消费失败的消息", msg.getMessageId(),
+                    values.size(), failed);
+        }
+        return results;
+    }
+
+    /**
+     * 按 key 分道消费时消费一条消息, 确认由 {@link KeyStripedDispatcher} 负责
+     *
+     * @param consumerHolder 消费方法
+     * @param envelope       信封的消费配置
+     * @param elementType    信封中消息的类型
+     * @param codec          编解码方式
+     * @param decoder        普通消息的解码方式
+     * @param bytesSchema    是否为 BYTES schema, 其他 schema 不识别信封
+     * @return 消费一条消息的方式
+     */
+    private static KeyStripedDispatcher.LaneHandler laneHandler(ConsumerHolder consumerHolder, Envelope envelope,
+                                                                Class<?> elementType, MessageCodec codec,
+                                                                Function<Object, Object> decoder,
+                                                                boolean bytesSchema) {
+        HandlerInvoker handlerInvoker = consumerHolder.getHandlerInvoker();
+        boolean listMode = envelope.mode() == Envelope.Mode.LIST;
+        boolean redeliver = envelope.failurePolicy() == Envelope.FailurePolicy.REDELIVER;
+        return (consumer, msg) -> {
+            if (listMode || bytesSchema && EnvelopeFormat.isEnvelope(msg)) {
+                List<Object> results = invokeEnvelope(consumer, msg, handlerInvoker, envelope, elementType, codec);
+                return REACTOR_PRESENT ? ReactiveConsumerSupport.completion(results, msg, redeliver) : null;
+            }
+            Object args = decoder.apply(msg.getValue());
+            if (handlerInvoker.isSelfAck()) {
+                handlerInvoker.invoke(args, consumer, msg);
+                return null;
+            }
+            Object result = handlerInvoker.invoke(args);
+            return REACTOR_PRESENT && ReactiveConsumerSupport.isPublisher(result)
+                    ? ReactiveConsumerSupport.completion(result) : null;
+        };
+    }
+
+    /**
+     * 拆开信封并转换为方法参数的类型, 普通消息作为只有一个元素的集合
+     *
+     * @param msg         消息
+     * @param elementType 方法参数的类型
+     * @param codec       编解码方式
+     * @param bytesSchema 是否为 BYTES schema, 其他 schema 的消息即使带有信封属性也按普通消息处理
+     * @return 方法参数
+     */
+    private static List<Object> unpack(Message<?> msg, Class<?> elementType, MessageCodec codec,
+                                       boolean bytesSchema) {
+        if (!bytesSchema || !EnvelopeFormat.isEnvelope(msg)) {
+            return Collections.singletonList(decode(msg.getValue(), elementType, codec));
+        }
+        List<byte[]> payloads = EnvelopeFormat.unpack((byte[]) msg.getValue());
+        List<Object> values = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            values.add(decode(payload, elementType, codec));
+        }
+        return values;
+    }
+
+    /**
+     * 确定批量消费时一批消息的转换方式, 参数为 Messages 时原样交给方法, 为 List 时逐条转换, 信封拆开后合并到同一个 List
+     *
+     * @param parameterType 方法第一个参数的类型
+     * @param elementType   List 中元素的类型
+     * @param codec         编解码方式
+     * @param bytesSchema   是否为 BYTES schema, 其他 schema 不识别信封
+     * @return 将一批消息转换为方法参数的方式
+     */
+    private static Function<Messages<?>, Object> batchDecoder(Class<?> parameterType, Class<?> elementType,
+                                                             MessageCodec codec, boolean bytesSchema) {
+        if (Messages.class.isAssignableFrom(parameterType)) {
+            return messages -> messages;
+        }
+        boolean rawMessage = Message.class.isAssignableFrom(elementType);
+        return messages -> {
+            List<Object> values = new ArrayList<>(messages.size());
+            for (Message<?> msg : messages) {
+                if (rawMessage) {
+                    values.add(msg);
+                } else {
+                    values.addAll(unpack(msg, elementType, codec, bytesSchema));
+                }
+            }
+            return values;
+        };
+    }
+
+    /**
+     * 根据 schema 和方法参数的类型确定解码方式, 只在订阅时调用一次
+     *
+     * @param parameterType 方法参数的类型
+     * @param codec         编解码方式
+     * @param bytesSchema   是否为 BYTES schema, 其他 schema 解码后的值原样交给方法
+     * @return 将消息的值转换为方法参数的方式
+     */
+    static Function<Object, Object> decoder(Class<?> parameterType, MessageCodec codec, boolean bytesSchema) {
+        if (!bytesSchema || byte[].class.equals(parameterType)) {
+            return Function.identity();
         }
+        if (CharSequence.class.isAssignableFrom(parameterType)) {
+            return value -> new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value -> codec.decode((byte[]) value, parameterType);
+    }
+
+    /**
+     * 将 byte[] 转换为方法参数的类型, 其他 schema 解码后的值原样返回
+     *
+     * @param value         消息的值
+     * @param parameterType 方法参数的类型
+     * @param codec         编解码方式
+     * @return 方法参数
+     */
+    private static Object decode(Object value, Class<?> parameterType, MessageCodec codec) {
+        if (!(value instanceof byte[]) || parameterType.equals(value.getClass())) {
+            return value;
+        }
+        if (CharSequence.class.isAssignableFrom(parameterType)) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return codec.decode((byte[]) value, parameterType);
     }
 
     public List<Consumer<?>> getConsumers() {
         return consumers;
     }
 
+    /**
+     * 所有消费者订阅完成的信号, 开启后台订阅时可以用来判断是否就绪, 订阅失败时以异常完成
+     *
+     * @return 订阅完成的 future
+     */
+    public CompletableFuture<Void> getSubscription() {
+        return subscription;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
     @Override
     public void setEmbeddedValueResolver(StringValueResolver stringValueResolver) {
         this.stringValueResolver = stringValueResolver;
@@ -1,9 +1,7 @@
 package com.sumwhy.pulsar.consumer;
 
 import com.sumwhy.pulsar.annotation.PulsarConsumer;
-import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.NoArgsConstructor;
 
 import java.lang.reflect.Method;
 
@@ -13,14 +11,24 @@ import java.lang.reflect.Method;
  * @author 何嘉豪
  */
 @Data
-@NoArgsConstructor
-@AllArgsConstructor
 public class ConsumerHolder {
 
-    private PulsarConsumer pulsarConsumer;
+    private final PulsarConsumer pulsarConsumer;
 
-    private Object invoker;
+    private final Object invoker;
 
-    private Method handler;
+    private final Method handler;
+
+    /**
+     * 创建时确定的调用方式
+     */
+    private final HandlerInvoker handlerInvoker;
+
+    public ConsumerHolder(PulsarConsumer pulsarConsumer, Object invoker, Method handler) {
+        this.pulsarConsumer = pulsarConsumer;
+        this.invoker = invoker;
+        this.handler = handler;
+        this.handlerInvoker = HandlerInvoker.of(invoker, handler);
+    }
 
 }
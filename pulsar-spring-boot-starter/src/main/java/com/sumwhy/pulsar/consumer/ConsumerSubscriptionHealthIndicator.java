@@ -0,0 +1,44 @@
+package com.sumwhy.pulsar.consumer;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * <p> @date: 2026-10-19 09:40</p>
+ * <p> 消费者订阅状态的健康检查, 订阅中为 OUT_OF_SERVICE, 失败为 DOWN, 可以加入 readiness 组 </p>
+ *
+ * @author 何嘉豪
+ */
+@Component("pulsarConsumersHealthIndicator")
+@ConditionalOnClass(name = "org.springframework.boot.actuate.health.HealthIndicator")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class ConsumerSubscriptionHealthIndicator extends AbstractHealthIndicator {
+
+    private final ConsumerAggregator consumerAggregator;
+
+    public ConsumerSubscriptionHealthIndicator(ConsumerAggregator consumerAggregator) {
+        super("pulsar consumer health check failed");
+        this.consumerAggregator = consumerAggregator;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        CompletableFuture<Void> subscription = consumerAggregator.getSubscription();
+        if (!subscription.isDone()) {
+            builder.outOfService().withDetail("subscribed", consumerAggregator.getConsumers().size());
+            return;
+        }
+        try {
+            subscription.getNow(null);
+            builder.up().withDetail("subscribed", consumerAggregator.getConsumers().size());
+        } catch (CompletionException e) {
+            builder.down(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.sumwhy.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p> @date: 2026-10-18 23:30</p>
+ * <p> 累积确认的水位, 按分区记录接收顺序, 之前收到的消息全部处理完成后才推进, 并发处理的消息不会被提前确认 </p>
+ * <p> 处理失败时丢弃所有未确认的记录并进入下一代, 上一代的消息不再处理也不再确认;
+ * 在重新投递到达之前, 分区中晚于第一条未确认消息的消息直接丢弃, 避免它们的累积确认越过失败的消息 </p>
+ * <p> 重新投递发出后分区收到的第一条消息结束等待, 即使它晚于第一条未确认的消息: 这些消息可能已经过期,
+ * 或者 Failover 下分区转移到其他消费者后被确认, 不会再投递, 继续等待会让分区停止消费 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+final class CumulativeAckTracker {
+
+    /**
+     * 每个分区未确认的消息, 按接收顺序排列
+     */
+    private final Map<String, ArrayDeque<Entry>> pending = new HashMap<>();
+
+    /**
+     * 每个分区等待重新投递的位置
+     */
+    private final Map<String, Rewind> rewinds = new HashMap<>();
+
+    private int generation;
+
+    /**
+     * 按接收顺序登记消息, 只在 listener 线程调用
+     *
+     * @param msg 消息
+     * @return 登记的记录, 消息在等待重新投递期间到达时返回 null
+     */
+    synchronized Entry register(Message<?> msg) {
+        String topic = msg.getTopicName();
+        Rewind rewind = rewinds.get(topic);
+        if (rewind != null) {
+            boolean later = msg.getMessageId().compareTo(rewind.first) > 0;
+            if (later && !rewind.redelivered) {
+                rewind.dropped++;
+                log.debug("分区 {} 等待从 messageId:{} 重新投递, 丢弃 messageId:{}", topic, rewind.first, msg.getMessageId());
+                return null;
+            }
+            rewinds.remove(topic);
+            if (later) {
+                log.warn("分区 {} 重新投递后从 messageId:{} 开始, 晚于第一条未确认的 messageId:{}, 之间的消息不会再消费, "
+                        + "等待期间丢弃 {} 条", topic, msg.getMessageId(), rewind.first, rewind.dropped);
+            } else if (rewind.dropped > 0) {
+                log.info("分区 {} 从 messageId:{} 重新投递, 等待期间丢弃 {} 条", topic, msg.getMessageId(), rewind.dropped);
+            }
+        }
+        Entry entry = new Entry(msg, generation);
+        pending.computeIfAbsent(topic, key -> new ArrayDeque<>()).add(entry);
+        return entry;
+    }
+
+    /**
+     * @param entry 记录
+     * @return 是否已经失效, 失效的消息会重新投递
+     */
+    synchronized boolean isStale(Entry entry) {
+        return entry.generation != generation;
+    }
+
+    /**
+     * 标记消息处理完成并推进水位
+     *
+     * @param entry 记录
+     * @return 水位推进到的消息, 对其累积确认; 没有推进时返回 null
+     */
+    synchronized Message<?> complete(Entry entry) {
+        if (entry.generation != generation) {
+            return null;
+        }
+        entry.done = true;
+        ArrayDeque<Entry> entries = pending.get(entry.msg.getTopicName());
+        Message<?> watermark = null;
+        while (!entries.isEmpty() && entries.peekFirst().done) {
+            watermark = entries.pollFirst().msg;
+        }
+        return watermark;
+    }
+
+    /**
+     * 标记消息处理失败, 之后需要让消费者重新投递所有未确认的消息
+     *
+     * @param entry 记录
+     * @return 是否需要重新投递, 同一代中只有第一次失败返回 true
+     */
+    synchronized boolean fail(Entry entry) {
+        if (entry.generation != generation) {
+            return false;
+        }
+        generation++;
+        pending.forEach((topic, entries) -> {
+            if (!entries.isEmpty()) {
+                rewinds.put(topic, new Rewind(entries.peekFirst().msg.getMessageId(), generation));
+            }
+        });
+        pending.clear();
+        return true;
+    }
+
+    /**
+     * 标记 {@link #fail(Entry)} 之后的重新投递已经发出, 之后每个分区收到的第一条消息结束等待
+     * <p>
+     * 在 redeliverUnacknowledgedMessages 返回后调用, 它会清空接收队列, 之后收到的都是重新投递的消息
+     *
+     * @param failed 失败并返回 true 的记录, 之后又有失败时只标记之前的回退
+     */
+    synchronized void redelivered(Entry failed) {
+        for (Rewind rewind : rewinds.values()) {
+            if (rewind.generation == failed.generation + 1) {
+                rewind.redelivered = true;
+            }
+        }
+    }
+
+    static final class Entry {
+
+        private final Message<?> msg;
+
+        private final int generation;
+
+        private boolean done;
+
+        private Entry(Message<?> msg, int generation) {
+            this.msg = msg;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Rewind {
+
+        /**
+         * 第一条未确认的消息
+         */
+        private final MessageId first;
+
+        /**
+         * 回退后的代
+         */
+        private final int generation;
+
+        private boolean redelivered;
+
+        private long dropped;
+
+        private Rewind(MessageId first, int generation) {
+            this.first = first;
+            this.generation = generation;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.sumwhy.pulsar.consumer;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * <p> @date: 2026-10-18 22:40</p>
+ * <p> 消费方法的调用方式, 在创建 {@link ConsumerHolder} 时确定参数数量和参数类型,
+ * 并把方法转换为绑定了 bean 的 MethodHandle, 消费时不再反射获取参数信息, 也不为参数分配数组 </p>
+ * <p> 方法抛出的异常原样抛出, 不再包装为 InvocationTargetException </p>
+ *
+ * @author 何嘉豪
+ */
+public final class HandlerInvoker {
+
+    private final MethodHandle handle;
+
+    private final int arity;
+
+    private final Class<?> parameterType;
+
+    private HandlerInvoker(MethodHandle handle, int arity, Class<?> parameterType) {
+        this.handle = handle;
+        this.arity = arity;
+        this.parameterType = parameterType;
+    }
+
+    /**
+     * @param bean    消费方法所在的 bean
+     * @param handler 消费方法, 参数为 (消息) 或 (消息, Consumer, Message), 批量消费时为 (消息, Consumer, Messages)
+     * @return 调用方式
+     */
+    public static HandlerInvoker of(Object bean, Method handler) {
+        int arity = handler.getParameterCount();
+        if (arity != 1 && arity != 3) {
+            throw new IllegalArgumentException("consumer method " + handler
+                    + " must take (msg) or (msg, Consumer, Message) parameters");
+        }
+        ReflectionUtils.makeAccessible(handler);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(handler);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("can not access consumer method " + handler, e);
+        }
+        // 统一为 (Object...)Object, 基本类型装箱, void 返回 null
+        handle = handle.bindTo(bean).asType(MethodType.genericMethodType(arity));
+        return new HandlerInvoker(handle, arity, handler.getParameterTypes()[0]);
+    }
+
+    /**
+     * 调用只有一个参数的消费方法
+     *
+     * @param arg 消息
+     * @return 方法的返回值, void 时为 null
+     * @throws Exception 方法抛出的异常
+     */
+    public Object invoke(Object arg) throws Exception {
+        try {
+            return (Object) handle.invokeExact(arg);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * 调用三个参数的消费方法
+     *
+     * @param arg      消息
+     * @param consumer 消费者
+     * @param msg      原始消息
+     * @return 方法的返回值, void 时为 null
+     * @throws Exception 方法抛出的异常
+     */
+    public Object invoke(Object arg, Consumer<?> consumer, Message<?> msg) throws Exception {
+        try {
+            return (Object) handle.invokeExact(arg, (Object) consumer, (Object) msg);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * 调用三个参数的批量消费方法
+     *
+     * @param arg      一批消息
+     * @param consumer 消费者
+     * @param messages 原始消息
+     * @return 方法的返回值, void 时为 null
+     * @throws Exception 方法抛出的异常
+     */
+    public Object invoke(Object arg, Consumer<?> consumer, Messages<?> messages) throws Exception {
+        try {
+            return (Object) handle.invokeExact(arg, (Object) consumer, (Object) messages);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * @return 参数数量, 1 或 3
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * @return 是否由方法自行确认
+     */
+    public boolean isSelfAck() {
+        return arity == 3;
+    }
+
+    /**
+     * @return 第一个参数的类型
+     */
+    public Class<?> getParameterType() {
+        return parameterType;
+    }
+
+}
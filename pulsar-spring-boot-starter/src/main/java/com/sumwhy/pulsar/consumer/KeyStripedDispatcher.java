@@ -0,0 +1,307 @@
+package com.sumwhy.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 23:35</p>
+ * <p> Exclusive 和 Failover 订阅的按 key 分道消费, 消息按 orderingKey 或 key 的哈希分配到固定的单线程通道,
+ * 同一个 key 按接收顺序消费, 不同 key 并行; 没有 key 的消息都在第一个通道按顺序消费 </p>
+ * <p> 确认由 {@link CumulativeAckTracker} 跟踪, 只累积确认到已经全部处理完成的位置, 可以按消息数和时间合并确认;
+ * 任意消息失败时延时后让消费者从第一条未确认的消息开始重新投递, 已处理未确认的消息会再次消费 </p>
+ * <p> 分配到通道但还没有处理完成的消息数量不超过 maxInFlight, 达到上限时阻塞 listener 线程, 不再从接收队列取消息;
+ * listener 线程由同一个 client 的消费者共用, 阻塞期间共用该线程的其他消费者同样暂停 </p>
+ * <p> 延时确认和重新投递在单独的调度线程执行, 不占用处理消息的通道 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+final class KeyStripedDispatcher {
+
+    private final ExecutorService[] lanes;
+
+    /**
+     * 延时确认和失败后的重新投递
+     */
+    private final ScheduledExecutorService scheduler;
+
+    private final LaneHandler handler;
+
+    /**
+     * 是否跟踪确认, 三个参数的方法自行确认时只分道
+     */
+    private final boolean trackAcks;
+
+    private final long redeliveryDelayMillis;
+
+    /**
+     * 每处理多少条消息确认一次
+     */
+    private final int ackMaxMessages;
+
+    /**
+     * 处理完成的消息最多等待多久确认, 单位毫秒
+     */
+    private final long ackMaxDelayMillis;
+
+    private final CumulativeAckTracker tracker = new CumulativeAckTracker();
+
+    /**
+     * 分配到通道但还没有处理完成的消息, 避免处理慢时通道的队列无限增长
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * 每个分区还没有确认的水位, 累积确认只作用于消息所在的分区, 由 this 保护
+     */
+    private final Map<String, Message<?>> unacked = new HashMap<>();
+
+    private Consumer<?> unackedConsumer;
+
+    private int unackedCount;
+
+    private boolean ackScheduled;
+
+    /**
+     * @param consumerName          消费者名称, 用于线程名
+     * @param laneCount             通道数量
+     * @param trackAcks             是否跟踪确认
+     * @param redeliveryDelayMillis 失败后重新投递的延时, 单位毫秒
+     * @param ackMaxMessages        每处理多少条消息确认一次, 小于等于 1 时水位每次推进都确认
+     * @param ackMaxDelayMillis     处理完成的消息最多等待多久确认, 单位毫秒
+     * @param maxInFlight           分配到通道但还没有处理完成的最大消息数量, 通常为接收队列的大小
+     * @param handler               消费一条消息
+     */
+    KeyStripedDispatcher(String consumerName, int laneCount, boolean trackAcks, long redeliveryDelayMillis,
+                         int ackMaxMessages, long ackMaxDelayMillis, int maxInFlight, LaneHandler handler) {
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(daemon("pulsar-lane-" + consumerName + "-" + i));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                daemon("pulsar-lane-" + consumerName + "-scheduler"));
+        this.trackAcks = trackAcks;
+        this.redeliveryDelayMillis = redeliveryDelayMillis;
+        this.ackMaxMessages = ackMaxMessages;
+        this.ackMaxDelayMillis = ackMaxDelayMillis;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.handler = handler;
+    }
+
+    private static ThreadFactory daemon(String threadName) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 作为消费者的 listener, 在 listener 线程按接收顺序调用, 在途消息达到上限时阻塞
+     *
+     * @param consumer 消费者
+     * @param msg      消息
+     */
+    void dispatch(Consumer<?> consumer, Message<?> msg) {
+        CumulativeAckTracker.Entry entry = null;
+        if (trackAcks) {
+            entry = tracker.register(msg);
+            if (entry == null) {
+                // 等待重新投递, 之后会再次收到
+                return;
+            }
+        }
+        CumulativeAckTracker.Entry registered = entry;
+        // 在登记之后等待, 登记必须按接收顺序进行
+        inFlight.acquireUninterruptibly();
+        try {
+            lanes[lane(msg)].execute(() -> process(consumer, msg, registered));
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            // 正在关闭, 未确认的消息会重新投递
+            log.debug("consumer:{} 正在关闭, messageId:{} 的消息未处理", consumer.getConsumerName(), msg.getMessageId());
+        }
+    }
+
+    /**
+     * 停止分发并等待通道中已分配的消息处理完成, 确认全部已处理的消息, 之后才可以关闭消费者, 否则这些消息无法确认
+     * <p>
+     * 还没有执行的延时任务直接取消: 延时确认已经由这里发送, 重新投递由关闭后重新连接代替
+     *
+     * @param timeoutMillis 最长等待时间, 单位毫秒
+     */
+    void close(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Arrays.stream(lanes).forEach(ExecutorService::shutdown);
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    log.warn("按 key 分道的消息在 {} ms 内没有处理完成", timeoutMillis);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAck();
+        scheduler.shutdownNow();
+    }
+
+    private int lane(Message<?> msg) {
+        int hash;
+        if (msg.hasOrderingKey()) {
+            hash = Arrays.hashCode(msg.getOrderingKey());
+        } else if (msg.hasKey()) {
+            hash = msg.getKey().hashCode();
+        } else {
+            return 0;
+        }
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void process(Consumer<?> consumer, Message<?> msg, CumulativeAckTracker.Entry entry) {
+        if (entry != null && tracker.isStale(entry)) {
+            // 已经回退, 等待重新投递
+            inFlight.release();
+            return;
+        }
+        CompletableFuture<?> completion;
+        try {
+            completion = handler.handle(consumer, msg);
+        } catch (Exception e) {
+            failed(consumer, msg, entry, e);
+            return;
+        }
+        if (completion == null) {
+            completed(consumer, entry);
+            return;
+        }
+        completion.whenComplete((result, e) -> {
+            if (e != null) {
+                failed(consumer, msg, entry, e);
+            } else {
+                completed(consumer, entry);
+            }
+        });
+    }
+
+    private void completed(Consumer<?> consumer, CumulativeAckTracker.Entry entry) {
+        inFlight.release();
+        if (entry == null) {
+            return;
+        }
+        if (tracker.isStale(entry)) {
+            return;
+        }
+        Message<?> watermark = tracker.complete(entry);
+        if (ackMaxMessages <= 1) {
+            if (watermark != null) {
+                acknowledge(consumer, watermark);
+            }
+            return;
+        }
+        boolean flush;
+        boolean schedule = false;
+        synchronized (this) {
+            if (watermark != null) {
+                unacked.put(watermark.getTopicName(), watermark);
+                unackedConsumer = consumer;
+            }
+            flush = ++unackedCount >= ackMaxMessages && !unacked.isEmpty();
+            if (!flush && !unacked.isEmpty() && !ackScheduled) {
+                schedule = ackScheduled = true;
+            }
+        }
+        if (flush) {
+            flushAck();
+        } else if (schedule) {
+            try {
+                scheduler.schedule(this::flushAck, ackMaxDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 正在关闭, 关闭时统一确认
+                log.debug("consumer:{} 正在关闭, 确认将在关闭时发送", consumer.getConsumerName());
+            }
+        }
+    }
+
+    /**
+     * 确认每个分区已经推进但还没有确认的水位
+     */
+    private void flushAck() {
+        List<Message<?>> watermarks;
+        Consumer<?> consumer;
+        synchronized (this) {
+            watermarks = new ArrayList<>(unacked.values());
+            consumer = unackedConsumer;
+            unacked.clear();
+            unackedConsumer = null;
+            unackedCount = 0;
+            ackScheduled = false;
+        }
+        for (Message<?> watermark : watermarks) {
+            acknowledge(consumer, watermark);
+        }
+    }
+
+    private void acknowledge(Consumer<?> consumer, Message<?> watermark) {
+        consumer.acknowledgeCumulativeAsync(watermark).exceptionally(e -> {
+            log.warn("messageId:{} 累积确认失败, 未确认的消息会重新投递", watermark.getMessageId(), e);
+            return null;
+        });
+    }
+
+    private void failed(Consumer<?> consumer, Message<?> msg, CumulativeAckTracker.Entry entry, Throwable e) {
+        inFlight.release();
+        log.error("messageId:{} 的消息消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+        if (entry == null) {
+            consumer.negativeAcknowledge(msg);
+            return;
+        }
+        if (tracker.fail(entry)) {
+            // 失败之前推进的水位不包含失败的消息, 先确认, 减少重新投递的消息
+            flushAck();
+            log.warn("consumer:{} 将在 {} ms 后从第一条未确认的消息开始重新投递", consumer.getConsumerName(),
+                    redeliveryDelayMillis);
+            try {
+                scheduler.schedule(() -> {
+                    consumer.redeliverUnacknowledgedMessages();
+                    tracker.redelivered(entry);
+                }, redeliveryDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // 正在关闭, 重新连接后从水位开始投递
+                log.debug("consumer:{} 正在关闭, 不再重新投递", consumer.getConsumerName());
+            }
+        }
+    }
+
+    /**
+     * 消费一条消息
+     */
+    @FunctionalInterface
+    interface LaneHandler {
+
+        /**
+         * @param consumer 消费者
+         * @param msg      消息
+         * @return 异步完成的结果, 同步完成时为 null
+         * @throws Exception 消费失败
+         */
+        CompletableFuture<?> handle(Consumer<?> consumer, Message<?> msg) throws Exception;
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.sumwhy.pulsar.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * <p> @date: 2026-10-18 20:05</p>
+ * <p> 响应式消费方法的支持, 只在引入 reactor-core 时加载 </p>
+ * <p> 返回 Publisher 的方法在 Publisher 完成时确认, 出错时否认;
+ * 参数为 Flux 的方法消息按下游的需求拉取, 元素为 {@link ReceivedMessage} 时自行确认, 否则每条消息被下游接收后确认 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+final class ReactiveConsumerSupport {
+
+    /**
+     * 参数为 Flux 的消费方法返回的流出错后, 重新调用消费方法前的延时
+     */
+    private static final Duration RESUBSCRIBE_DELAY = Duration.ofSeconds(1);
+
+    private ReactiveConsumerSupport() {
+    }
+
+    /**
+     * @param handler 消费方法
+     * @return 是否为参数为 Flux 的消费方法
+     */
+    static boolean isFluxHandler(Method handler) {
+        return handler.getParameterCount() == 1 && Flux.class.isAssignableFrom(handler.getParameterTypes()[0]);
+    }
+
+    /**
+     * @param result 消费方法的返回值
+     * @return 是否需要等待返回值完成后再确认
+     */
+    static boolean isPublisher(Object result) {
+        return result instanceof Publisher;
+    }
+
+    /**
+     * 返回的 Publisher 完成时确认, 出错时否认, 不阻塞 listener 线程
+     *
+     * @param result   消费方法返回的 Publisher
+     * @param consumer 消费者
+     * @param msg      消息
+     */
+    static void acknowledgeOnCompletion(Object result, Consumer<?> consumer, Message<?> msg) {
+        Flux.from((Publisher<?>) result).then().subscribe(null, e -> {
+            consumer.negativeAcknowledge(msg);
+            log.error("messageId:{} 的消息消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+        }, () -> Acknowledgements.acknowledge(consumer, msg));
+    }
+
+    /**
+     * 返回的 Publisher 完成时确认整批消息, 出错时整批否认
+     *
+     * @param result   批量消费方法返回的 Publisher
+     * @param consumer 消费者
+     * @param messages 一批消息
+     */
+    static void acknowledgeOnCompletion(Object result, Consumer<?> consumer, Messages<?> messages) {
+        Flux.from((Publisher<?>) result).then().subscribe(null, e -> {
+            consumer.negativeAcknowledge(messages);
+            log.error("consumer:{} 的 {} 条消息批量消费失败,原因:{}", consumer.getConsumerName(), messages.size(),
+                    e.getMessage(), e);
+        }, () -> Acknowledgements.acknowledge(consumer, messages));
+    }
+
+    /**
+     * 信封中的消息返回的 Publisher 全部完成时确认信封
+     *
+     * @param results   每次调用的返回值, 不是 Publisher 的视为已完成
+     * @param consumer  消费者
+     * @param msg       信封
+     * @param redeliver 出错时是否否认, 否则记录后确认
+     */
+    static void acknowledgeOnCompletion(List<Object> results, Consumer<?> consumer, Message<?> msg,
+                                        boolean redeliver) {
+        whenAll(results, msg, redeliver).subscribe(null, e -> {
+            consumer.negativeAcknowledge(msg);
+            log.error("messageId:{} 的信封消费失败,原因:{}", msg.getMessageId(), e.getMessage(), e);
+        }, () -> Acknowledgements.acknowledge(consumer, msg));
+    }
+
+    /**
+     * @param result 消费方法返回的 Publisher
+     * @return Publisher 完成时完成, 由调用方决定如何确认
+     */
+    static CompletableFuture<Void> completion(Object result) {
+        return Flux.from((Publisher<?>) result).then().toFuture();
+    }
+
+    /**
+     * @param results   信封中每次调用的返回值, 不是 Publisher 的视为已完成
+     * @param msg       信封
+     * @param redeliver 出错时是否以失败完成, 否则记录后跳过
+     * @return 全部 Publisher 完成时完成, 没有 Publisher 时返回 null
+     */
+    static CompletableFuture<Void> completion(List<Object> results, Message<?> msg, boolean redeliver) {
+        if (results.stream().noneMatch(ReactiveConsumerSupport::isPublisher)) {
+            return null;
+        }
+        return whenAll(results, msg, redeliver).toFuture();
+    }
+
+    private static Mono<Void> whenAll(List<Object> results, Message<?> msg, boolean redeliver) {
+        return Flux.fromIterable(results)
+                .filter(ReactiveConsumerSupport::isPublisher)
+                .flatMap(result -> {
+                    Mono<Void> completion = Flux.from((Publisher<?>) result).then();
+                    return redeliver ? completion : completion.onErrorResume(e -> {
+                        log.error("messageId:{} 的信封中有消息消费失败, 已跳过,原因:{}", msg.getMessageId(),
+                                e.getMessage(), e);
+                        return Mono.empty();
+                    });
+                })
+                .then();
+    }
+
+    /**
+     * 以 Flux 的形式把消息交给消费方法, 只在下游有需求时接收消息, 受 receiverQueueSize 预取
+     * <p>
+     * 元素为 {@link ReceivedMessage} 时由消费方法自行确认; 否则每条消息的全部元素发给下游后即确认, 下游取消时否认,
+     * 下游内部有缓冲 (如 publishOn, buffer) 时确认早于处理完成, 为至多一次
+     * <p>
+     * 单条消息解码失败时否认并跳过; 消费方法返回的流出错时让消费者重新投递未确认的消息, 延时后重新调用消费方法
+     *
+     * @param consumer       没有设置 listener 的消费者
+     * @param consumerHolder 消费方法
+     * @param decoder        将消息转换为 Flux 元素的方式, 信封拆开为多个元素
+     * @param explicitAck    元素是否为 {@link ReceivedMessage}
+     */
+    static void subscribeFlux(Consumer<?> consumer, ConsumerHolder consumerHolder,
+                              Function<Message<?>, List<Object>> decoder, boolean explicitAck) {
+        Flux<Object> messages = Mono.defer(() -> Mono.fromFuture(consumer.receiveAsync())).repeat()
+                .concatMap(msg -> {
+                    List<Object> elements;
+                    try {
+                        elements = decoder.apply(msg);
+                    } catch (RuntimeException e) {
+                        consumer.negativeAcknowledge(msg);
+                        log.error("messageId:{} 的消息解码失败, 已否认并跳过,原因:{}", msg.getMessageId(), e.getMessage(), e);
+                        return Flux.empty();
+                    }
+                    if (elements.isEmpty()) {
+                        Acknowledgements.acknowledge(consumer, msg);
+                        return Flux.empty();
+                    }
+                    if (explicitAck) {
+                        return Flux.fromIterable(wrap(consumer, msg, elements));
+                    }
+                    return Flux.fromIterable(elements).doFinally(signal -> {
+                        // 全部元素发给下游后 inner 完成, 下游取消或出错时否认
+                        if (signal == SignalType.ON_COMPLETE) {
+                            Acknowledgements.acknowledge(consumer, msg);
+                        } else {
+                            consumer.negativeAcknowledge(msg);
+                        }
+                    });
+                });
+        Object result;
+        try {
+            result = consumerHolder.getHandlerInvoker().invoke(messages);
+        } catch (Exception e) {
+            log.error("consumer:{} 的消费方法调用失败", consumer.getConsumerName(), e);
+            return;
+        }
+        if (!(result instanceof Publisher)) {
+            // 消费方法自行订阅, 无法感知流的结束
+            return;
+        }
+        Flux.from((Publisher<?>) result).then().subscribe(null, e -> {
+            if (isClosed(e)) {
+                log.info("consumer:{} 已关闭, 消费流结束", consumer.getConsumerName());
+                return;
+            }
+            log.error("consumer:{} 的消费流异常结束, {} ms 后重新订阅", consumer.getConsumerName(),
+                    RESUBSCRIBE_DELAY.toMillis(), e);
+            // 已发给旧流但没有确认的消息不会再被处理
+            consumer.redeliverUnacknowledgedMessages();
+            Mono.delay(RESUBSCRIBE_DELAY).subscribe(tick -> subscribeFlux(consumer, consumerHolder, decoder, explicitAck));
+        }, () -> log.info("consumer:{} 的消费流已结束", consumer.getConsumerName()));
+    }
+
+    private static List<Object> wrap(Consumer<?> consumer, Message<?> msg, List<Object> elements) {
+        ReceivedMessage.Settlement settlement = new ReceivedMessage.Settlement(consumer, msg, elements.size());
+        List<Object> wrapped = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            wrapped.add(new ReceivedMessage<>(element, settlement));
+        }
+        return wrapped;
+    }
+
+    private static boolean isClosed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof PulsarClientException.AlreadyClosedException;
+    }
+
+}
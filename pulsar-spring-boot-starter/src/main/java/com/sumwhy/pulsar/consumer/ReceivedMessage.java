@@ -0,0 +1,94 @@
+package com.sumwhy.pulsar.consumer;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> @date: 2026-10-19 11:10</p>
+ * <p> 参数为 {@code Flux<ReceivedMessage<T>>} 的消费方法收到的元素, 由消费方法在处理完成后自行确认或否认 </p>
+ * <p> 信封拆出的多个元素共用一条 pulsar 消息, 全部确认后才确认信封, 任意一个否认时否认整个信封 </p>
+ *
+ * @param <T> 消息类型
+ * @author 何嘉豪
+ */
+public final class ReceivedMessage<T> {
+
+    private final T value;
+
+    private final Settlement settlement;
+
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    ReceivedMessage(T value, Settlement settlement) {
+        this.value = value;
+        this.settlement = settlement;
+    }
+
+    /**
+     * @return 解码后的消息
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return 原始消息, 信封拆出的元素返回信封
+     */
+    public Message<?> getMessage() {
+        return settlement.message;
+    }
+
+    /**
+     * 确认, 重复调用或已经否认时忽略
+     */
+    public void ack() {
+        if (settled.compareAndSet(false, true)) {
+            settlement.ack();
+        }
+    }
+
+    /**
+     * 否认, 消息按 negativeAckRedeliveryDelay 重新投递, 重复调用或已经确认时忽略
+     */
+    public void nack() {
+        if (settled.compareAndSet(false, true)) {
+            settlement.nack();
+        }
+    }
+
+    /**
+     * 一条 pulsar 消息拆出的全部元素共用的确认状态
+     */
+    static final class Settlement {
+
+        private final Consumer<?> consumer;
+
+        private final Message<?> message;
+
+        private final AtomicInteger remaining;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Settlement(Consumer<?> consumer, Message<?> message, int elements) {
+            this.consumer = consumer;
+            this.message = message;
+            this.remaining = new AtomicInteger(elements);
+        }
+
+        private void ack() {
+            if (remaining.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                Acknowledgements.acknowledge(consumer, message);
+            }
+        }
+
+        private void nack() {
+            if (done.compareAndSet(false, true)) {
+                consumer.negativeAcknowledge(message);
+            }
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import com.sumwhy.pulsar.consumer.ConsumerHolder;
 import com.sumwhy.pulsar.exception.InitFailedException;
 import org.apache.pulsar.client.api.Consumer;
 import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -59,14 +60,21 @@ public class ConsumerCollector implements BeanPostProcessor {
                 .map(method -> {
                     // 校验方法定义的合法性
                     int parameterCount = method.getParameterCount();
+                    if (parameterCount != 1 && parameterCount != 3) {
+                        throw new InitFailedException(
+                                String.format("方法定义有误,method name is %s", method.getName()));
+                    }
+                    PulsarConsumer pulsarConsumer = AnnotationUtils.getAnnotation(method, PulsarConsumer.class);
                     if (parameterCount == 3) {
                         Class<?>[] parameterTypes = method.getParameterTypes();
+                        // 批量消费时第三个参数为整批消息
+                        Class<?> messageType = pulsarConsumer.batch() ? Messages.class : Message.class;
                         if (!parameterTypes[1].isAssignableFrom(Consumer.class) ||
-                                !parameterTypes[2].isAssignableFrom(Message.class))
+                                !parameterTypes[2].isAssignableFrom(messageType))
                             throw new InitFailedException(
                                     String.format("方法定义有误,method name is %s", method.getName()));
                     }
-                    return new ConsumerHolder(AnnotationUtils.getAnnotation(method, PulsarConsumer.class), bean, method);
+                    return new ConsumerHolder(pulsarConsumer, bean, method);
                 })
                 .collect(Collectors.toMap(this::getConsumerName, consumer -> consumer,
                         // 为旧值添加下标
@@ -0,0 +1,36 @@
+package com.sumwhy.pulsar.metrics;
+
+import com.sumwhy.pulsar.producer.FireAndForgetTracker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p> @date: 2026-10-18 22:30</p>
+ * <p> 不关心结果的发送的成功和失败数量 </p>
+ *
+ * @author 何嘉豪
+ */
+@Component
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class FireAndForgetMetrics implements MeterBinder {
+
+    private final FireAndForgetTracker tracker;
+
+    public FireAndForgetMetrics(FireAndForgetTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("pulsar.send.forget", tracker, FireAndForgetTracker::getSucceeded)
+                .description("不关心结果的发送数量").tag("outcome", "success").register(registry);
+        FunctionCounter.builder("pulsar.send.forget", tracker, FireAndForgetTracker::getFailed)
+                .description("不关心结果的发送数量").tag("outcome", "failure").register(registry);
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.sumwhy.pulsar.metrics;
+
+import com.sumwhy.pulsar.producer.ProducerListener;
+import com.sumwhy.pulsar.producer.collector.ProducerCollector;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerStats;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p> @date: 2026-10-18 22:05</p>
+ * <p> 把每个 producer 的 {@link ProducerStats} 注册为 micrometer 指标, 以 topic 和 producer 名称为标签 </p>
+ * <p> 指标在采集时直接读取 pulsar client 每个 statsInterval 汇总一次的统计, 发送路径上没有额外开销;
+ * statsInterval 为 0 时 client 不统计, 指标全部为 0 </p>
+ * <p> 由 spring boot actuator 绑定到 MeterRegistry, 按需创建的 producer 在创建时注册, 淘汰时移除 </p>
+ *
+ * @author 何嘉豪
+ */
+@Component
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class ProducerMetricsBinder implements MeterBinder, ProducerListener {
+
+    private final ProducerCollector producerCollector;
+
+    /**
+     * 每个 producer 注册的指标, 淘汰时移除
+     */
+    private final Map<Producer<?>, List<Meter>> meters = new ConcurrentHashMap<>();
+
+    @Nullable
+    private volatile MeterRegistry registry;
+
+    public ProducerMetricsBinder(ProducerCollector producerCollector) {
+        this.producerCollector = producerCollector;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        producerCollector.addListener(this);
+    }
+
+    @Override
+    public void producerAdded(String topicUrl, Producer<?> producer) {
+        MeterRegistry registry = this.registry;
+        if (registry == null) {
+            return;
+        }
+        meters.computeIfAbsent(producer, key -> register(registry, topicUrl, producer));
+    }
+
+    @Override
+    public void producerRemoved(String topicUrl, Producer<?> producer) {
+        List<Meter> removed = meters.remove(producer);
+        MeterRegistry registry = this.registry;
+        if (removed != null && registry != null) {
+            removed.forEach(registry::remove);
+        }
+    }
+
+    private static List<Meter> register(MeterRegistry registry, String topicUrl, Producer<?> producer) {
+        Tags tags = Tags.of("topic", topicUrl, "producer", producer.getProducerName());
+        List<Meter> list = new ArrayList<>();
+        list.add(counter(registry, "pulsar.producer.sent.messages", "发送成功的消息数", tags, producer,
+                ProducerStats::getTotalMsgsSent));
+        list.add(counter(registry, "pulsar.producer.sent.bytes", "发送成功的字节数", tags, producer,
+                ProducerStats::getTotalBytesSent));
+        list.add(counter(registry, "pulsar.producer.send.failed", "发送失败的消息数", tags, producer,
+                ProducerStats::getTotalSendFailed));
+        list.add(counter(registry, "pulsar.producer.acks", "收到的服务端确认数", tags, producer,
+                ProducerStats::getTotalAcksReceived));
+        list.add(Gauge.builder("pulsar.producer.send.rate", producer, stat(ProducerStats::getSendMsgsRate))
+                .description("最近一个统计周期的发送速率").baseUnit("messages").tags(tags).register(registry));
+        list.add(Gauge.builder("pulsar.producer.send.throughput", producer, stat(ProducerStats::getSendBytesRate))
+                .description("最近一个统计周期的发送吞吐").baseUnit("bytes").tags(tags).register(registry));
+        list.add(latency(registry, "0.5", tags, producer, ProducerStats::getSendLatencyMillis50pct));
+        list.add(latency(registry, "0.75", tags, producer, ProducerStats::getSendLatencyMillis75pct));
+        list.add(latency(registry, "0.95", tags, producer, ProducerStats::getSendLatencyMillis95pct));
+        list.add(latency(registry, "0.99", tags, producer, ProducerStats::getSendLatencyMillis99pct));
+        list.add(latency(registry, "0.999", tags, producer, ProducerStats::getSendLatencyMillis999pct));
+        list.add(latency(registry, "max", tags, producer, ProducerStats::getSendLatencyMillisMax));
+        return list;
+    }
+
+    private static Meter counter(MeterRegistry registry, String name, String description, Tags tags,
+                                 Producer<?> producer, ToDoubleFunction<ProducerStats> total) {
+        return FunctionCounter.builder(name, producer, stat(total)).description(description).tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * 最近一个统计周期内的发送耗时分位数, 从发送到服务端确认
+     */
+    private static Meter latency(MeterRegistry registry, String quantile, Tags tags, Producer<?> producer,
+                                 ToDoubleFunction<ProducerStats> latency) {
+        return TimeGauge.builder("pulsar.producer.send.latency", producer, TimeUnit.MILLISECONDS, stat(latency))
+                .description("最近一个统计周期的发送耗时").tags(tags).tag("quantile", quantile).register(registry);
+    }
+
+    private static ToDoubleFunction<Producer<?>> stat(ToDoubleFunction<ProducerStats> function) {
+        return producer -> function.applyAsDouble(producer.getStats());
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.sumwhy.pulsar.metrics;
+
+import com.sumwhy.pulsar.producer.ProducerListener;
+import com.sumwhy.pulsar.producer.SendLatencyRecorder;
+import com.sumwhy.pulsar.producer.collector.ProducerCollector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.pulsar.client.api.Producer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 22:15</p>
+ * <p> 以 micrometer timer 记录每个 topic 的发送耗时, 发布 p50, p99, p999 </p>
+ * <p> 分位数由 micrometer 内置的 HdrHistogram 按时间窗口统计, 记录时不分配对象;
+ * 每个 topic 的 timer 只在第一次发送时创建, 之后是一次 map 查找, producer 淘汰或替换时移除 </p>
+ * <p> 需要配置 {@link com.sumwhy.pulsar.properties.GlobalProducerProperties#isSendLatencyMetrics()} 开启:
+ * 每次异步发送会多分配一个完成回调和它返回的 future, 并记录三个 timer; 同步发送只多两次 nanoTime 和一个 timer </p>
+ * <p> 只记录 {@link com.sumwhy.pulsar.PulsarTemplate} 的 send, sendAsync 和 batchSend,
+ * 发送句柄, 流式发送, 延时消息和 sendAndForget 不记录, 它们的耗时只体现在 pulsar.producer.send.latency 中 </p>
+ * <ul>
+ *     <li>pulsar.send.latency: 从调用到完成的总耗时, mode 标签区分 sync 和 async</li>
+ *     <li>pulsar.send.blocked: 异步发送时 sendAsync 调用本身的耗时, 队列满且 blockIfQueueFull 时体现为阻塞</li>
+ *     <li>pulsar.send.ack: 异步发送时从 sendAsync 返回到服务端确认的耗时</li>
+ * </ul>
+ *
+ * @author 何嘉豪
+ */
+@Component
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@ConditionalOnProperty(name = "pulsar.producer.default.send-latency-metrics", havingValue = "true")
+public class SendLatencyMetrics implements SendLatencyRecorder, MeterBinder, ProducerListener {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private final ProducerCollector producerCollector;
+
+    private final Map<String, TopicTimers> timers = new ConcurrentHashMap<>();
+
+    /**
+     * 绑定前的发送不记录
+     */
+    @Nullable
+    private volatile MeterRegistry registry;
+
+    public SendLatencyMetrics(ProducerCollector producerCollector) {
+        this.producerCollector = producerCollector;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        producerCollector.addListener(this);
+    }
+
+    @Override
+    public void producerAdded(String topicUrl, Producer<?> producer) {
+    }
+
+    /**
+     * 按需创建的 topic 可能很多, 淘汰时移除对应的 timer, 之后再次发送时重新创建
+     */
+    @Override
+    public void producerRemoved(String topicUrl, Producer<?> producer) {
+        TopicTimers removed = timers.remove(topicUrl);
+        MeterRegistry registry = this.registry;
+        if (removed != null && registry != null) {
+            removed.remove(registry);
+        }
+    }
+
+    @Override
+    public void recordSync(String topicUrl, long nanos) {
+        TopicTimers topicTimers = timers(topicUrl);
+        if (topicTimers != null) {
+            topicTimers.sync.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void recordAsync(String topicUrl, long blockedNanos, long ackNanos) {
+        TopicTimers topicTimers = timers(topicUrl);
+        if (topicTimers != null) {
+            topicTimers.async.record(blockedNanos + ackNanos, TimeUnit.NANOSECONDS);
+            topicTimers.blocked.record(blockedNanos, TimeUnit.NANOSECONDS);
+            topicTimers.ack.record(ackNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Nullable
+    private TopicTimers timers(String topicUrl) {
+        TopicTimers topicTimers = timers.get(topicUrl);
+        if (topicTimers == null) {
+            MeterRegistry registry = this.registry;
+            if (registry == null) {
+                return null;
+            }
+            topicTimers = timers.computeIfAbsent(topicUrl, key -> new TopicTimers(registry, key));
+        }
+        return topicTimers;
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String description, String topicUrl,
+                               @Nullable String mode) {
+        Timer.Builder builder = Timer.builder(name).description(description).tag("topic", topicUrl)
+                .publishPercentiles(PERCENTILES);
+        if (mode != null) {
+            builder.tag("mode", mode);
+        }
+        return builder.register(registry);
+    }
+
+    /**
+     * 一个 topic 的全部 timer
+     */
+    private static class TopicTimers {
+
+        private final Timer sync;
+
+        private final Timer async;
+
+        private final Timer blocked;
+
+        private final Timer ack;
+
+        TopicTimers(MeterRegistry registry, String topicUrl) {
+            this.sync = timer(registry, "pulsar.send.latency", "发送的总耗时", topicUrl, "sync");
+            this.async = timer(registry, "pulsar.send.latency", "发送的总耗时", topicUrl, "async");
+            this.blocked = timer(registry, "pulsar.send.blocked", "调用 sendAsync 的耗时", topicUrl, null);
+            this.ack = timer(registry, "pulsar.send.ack", "等待服务端确认的耗时", topicUrl, null);
+        }
+
+        void remove(MeterRegistry registry) {
+            registry.remove(sync);
+            registry.remove(async);
+            registry.remove(blocked);
+            registry.remove(ack);
+        }
+    }
+
+}
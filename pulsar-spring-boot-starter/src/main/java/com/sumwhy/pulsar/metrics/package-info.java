@@ -0,0 +1,12 @@
+/**
+ * <p> @date: 2026-10-18 22:05</p>
+ * <p> micrometer 指标, 只在引入 micrometer-core 时生效 </p>
+ *
+ * @author 何嘉豪
+ */
+@NonNullApi
+@NonNullFields
+package com.sumwhy.pulsar.metrics;
+
+import org.springframework.lang.NonNullApi;
+import org.springframework.lang.NonNullFields;
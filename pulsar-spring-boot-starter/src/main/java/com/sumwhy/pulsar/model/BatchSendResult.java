@@ -0,0 +1,51 @@
+package com.sumwhy.pulsar.model;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * <p> @date: 2026-10-18 17:40</p>
+ * <p> 流式批量发送的汇总结果, 只记录数量和第一个异常, 不保留每条消息的 future </p>
+ *
+ * @author 何嘉豪
+ */
+@Getter
+@ToString
+public class BatchSendResult {
+
+    /**
+     * 发送成功的数量
+     */
+    private final long succeeded;
+
+    /**
+     * 发送失败的数量
+     */
+    private final long failed;
+
+    /**
+     * 第一个失败的原因, 全部成功时为 null
+     */
+    private final Throwable firstError;
+
+    public BatchSendResult(long succeeded, long failed, Throwable firstError) {
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.firstError = firstError;
+    }
+
+    /**
+     * @return 发送的总数量
+     */
+    public long getTotal() {
+        return succeeded + failed;
+    }
+
+    /**
+     * @return 是否全部发送成功
+     */
+    public boolean isSuccess() {
+        return failed == 0 && firstError == null;
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.sumwhy.pulsar.model;
 
 import lombok.Data;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
 
 import java.time.Duration;
 
@@ -22,6 +25,11 @@ public class ProducerHolder {
      */
     private Class<?> msgType;
 
+    /**
+     * 编解码方式的名称, 为空时根据消息类型自动选择, 参考 {@link com.sumwhy.pulsar.codec.MessageCodecRegistry}
+     */
+    private String codec;
+
     /**
      * producer 的名称
      */
@@ -61,6 +69,13 @@ public class ProducerHolder {
      */
     private boolean enableBatching;
 
+    /**
+     * 是否按 key 分批, 开启后同一批消息的 key 相同, Key_Shared 订阅的消费者可以按 key 分发整批消息
+     * <p>
+     * 不开启时一批消息中混有多个 key, Key_Shared 订阅只能按批内第一条消息的 key 分发
+     */
+    private boolean keyBasedBatching;
+
     /**
      * 设置批量发送消息的最大延时 (<i>default: 1 ms</i>),如果设置为一个非 0 的数值,满足以下条件才会发送.
      * <p>
@@ -85,18 +100,117 @@ public class ProducerHolder {
      */
     private int batchingMaxBytes;
 
+    /**
+     * 同一个 topic 创建的 producer 数量 (<i>default: 1</i>)
+     * <p>
+     * 单个 producer 的发送队列和锁在热点 topic 上会成为瓶颈, 多个 producer 时按线程分散发送,
+     * 同一线程或同一 key 的消息仍由同一个 producer 发送, 顺序不变
+     */
+    private int producerCount;
+
+    /**
+     * 等待服务端确认的消息队列的最大长度 (<i>default: 1000</i>), 队列满时根据 blockIfQueueFull 阻塞或失败
+     */
+    private int maxPendingMessages;
+
+    /**
+     * 分区 topic 所有分区的等待队列长度之和的上限 (<i>default: 50000</i>)
+     */
+    private int maxPendingMessagesAcrossPartitions;
+
+    /**
+     * 压缩方式, 为 null 时使用全局配置 pulsar.producer.default.compression-type
+     * <p>
+     * 开启批量发送时整批压缩, 否则逐条压缩, 消费者自动解压
+     */
+    private CompressionType compressionType;
+
+    /**
+     * 是否开启自适应压缩, 只对 BYTES schema 生效, 最近的消息平均大小超过 compressionThreshold 时才压缩
+     * <p>
+     * 会额外创建同样数量的压缩 producer, 切换前后的消息之间不保证顺序; 有 key 的消息为了保证同一个 key 的顺序不参与切换,
+     * 始终不压缩
+     */
+    private boolean adaptiveCompression;
+
+    /**
+     * 自适应压缩的阈值 (size,单位为 B <i>default: 1KB</i>)
+     */
+    private int compressionThreshold;
+
+    /**
+     * 是否开启分块发送, 超过 broker 最大消息大小的消息拆分为多块发送, 由消费者重新组装, 只支持持久化 topic
+     * <p>
+     * 分块与批量发送不能同时开启: 同时开启时, BYTES schema 会额外创建一个不批量的分块 producer,
+     * 超过 chunkingThreshold 的消息由它发送, 不阻塞批量发送的小消息; 其他 schema 无法预知消息大小, 将关闭批量发送
+     */
+    private boolean enableChunking;
+
+    /**
+     * 交给分块 producer 发送的消息大小阈值 (size,单位为 B <i>default: 128KB</i>)
+     */
+    private int chunkingThreshold;
+
+    /**
+     * 是否开启信封模式, 只对 BYTES schema 生效, 多条没有 key 的小消息打包为一条 pulsar 消息发送, 消费者自动拆开
+     * <p>
+     * 信封由第一个 producer 发送; 带 key 或超过 envelopeMaxBytes 的消息直接发送, 可能越过信封中等待的消息
+     */
+    private boolean envelope;
+
+    /**
+     * 一个信封中的最大消息数量 (count <i>default: 100</i>)
+     */
+    private int envelopeMaxMessages;
+
+    /**
+     * 一个信封的最大大小 (size,单位为 B <i>default: 64KB</i>)
+     */
+    private int envelopeMaxBytes;
+
+    /**
+     * 信封中第一条消息的最长等待时间 (<i>default: 5 ms</i>), 同步发送最多多等待这么久
+     */
+    private Duration envelopeLingerTime;
+
+    /**
+     * 分区 topic 的路由模式, 为 null 时使用 pulsar 的默认值 RoundRobinPartition
+     */
+    private MessageRoutingMode messageRoutingMode;
+
+    /**
+     * 分区 topic 的自定义路由, 设置后路由模式为 CustomPartition
+     */
+    private MessageRouter messageRouter;
+
     private ProducerHolder(Builder builder) {
         this.topic = builder.topic;
         this.msgType = builder.msgType;
+        this.codec = builder.codec;
         this.producerName = builder.producerName;
         this.tenant = builder.tenant;
         this.namespace = builder.namespace;
         this.sendTimeout = builder.sendTimeout;
         this.blockIfQueueFull = builder.blockIfQueueFull;
         this.enableBatching = builder.enableBatching;
+        this.keyBasedBatching = builder.keyBasedBatching;
         this.batchingMaxPublishDelay = builder.batchingMaxPublishDelay;
         this.batchingMaxMessages = builder.batchingMaxMessages;
         this.batchingMaxBytes = builder.batchingMaxBytes;
+        this.producerCount = builder.producerCount;
+        this.maxPendingMessages = builder.maxPendingMessages;
+        this.maxPendingMessagesAcrossPartitions = builder.maxPendingMessagesAcrossPartitions;
+        this.compressionType = builder.compressionType;
+        this.enableChunking = builder.enableChunking;
+        this.chunkingThreshold = builder.chunkingThreshold;
+        this.adaptiveCompression = builder.adaptiveCompression;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.envelope = builder.envelope;
+        this.envelopeMaxMessages = builder.envelopeMaxMessages;
+        this.envelopeMaxBytes = builder.envelopeMaxBytes;
+        this.envelopeLingerTime = builder.envelopeLingerTime;
+        this.messageRoutingMode = builder.messageRoutingMode;
+        this.messageRouter = builder.messageRouter;
     }
 
     public static Builder builder(String topic) {
@@ -112,6 +226,8 @@ public class ProducerHolder {
 
         private Class<?> msgType = byte[].class;
 
+        private String codec = "";
+
         private String producerName = "";
 
         private String tenant = "";
@@ -124,12 +240,42 @@ public class ProducerHolder {
 
         private boolean enableBatching;
 
+        private boolean keyBasedBatching;
+
         private Duration batchingMaxPublishDelay = Duration.ofMillis(1L);
 
         private int batchingMaxMessages = 1000;
 
         private int batchingMaxBytes = 1 << 17;
 
+        private int producerCount = 1;
+
+        private int maxPendingMessages = 1000;
+
+        private int maxPendingMessagesAcrossPartitions = 50000;
+
+        private CompressionType compressionType;
+
+        private boolean enableChunking;
+
+        private int chunkingThreshold = 1 << 17;
+
+        private boolean adaptiveCompression;
+
+        private int compressionThreshold = 1 << 10;
+
+        private boolean envelope;
+
+        private int envelopeMaxMessages = 100;
+
+        private int envelopeMaxBytes = 1 << 16;
+
+        private Duration envelopeLingerTime = Duration.ofMillis(5L);
+
+        private MessageRoutingMode messageRoutingMode;
+
+        private MessageRouter messageRouter;
+
         private Builder(String topic) {
             this.topic = topic;
         }
@@ -139,6 +285,11 @@ public class ProducerHolder {
             return this;
         }
 
+        public Builder codec(String codec) {
+            this.codec = codec;
+            return this;
+        }
+
         public Builder producerName(String producerName) {
             this.producerName = producerName;
             return this;
@@ -169,6 +320,11 @@ public class ProducerHolder {
             return this;
         }
 
+        public Builder keyBasedBatching(boolean keyBasedBatching) {
+            this.keyBasedBatching = keyBasedBatching;
+            return this;
+        }
+
         public Builder batchingMaxPublishDelay(Duration batchingMaxPublishDelay) {
             this.batchingMaxPublishDelay = batchingMaxPublishDelay;
             return this;
@@ -184,6 +340,76 @@ public class ProducerHolder {
             return this;
         }
 
+        public Builder producerCount(int producerCount) {
+            this.producerCount = producerCount;
+            return this;
+        }
+
+        public Builder maxPendingMessages(int maxPendingMessages) {
+            this.maxPendingMessages = maxPendingMessages;
+            return this;
+        }
+
+        public Builder maxPendingMessagesAcrossPartitions(int maxPendingMessagesAcrossPartitions) {
+            this.maxPendingMessagesAcrossPartitions = maxPendingMessagesAcrossPartitions;
+            return this;
+        }
+
+        public Builder compressionType(CompressionType compressionType) {
+            this.compressionType = compressionType;
+            return this;
+        }
+
+        public Builder adaptiveCompression(boolean adaptiveCompression) {
+            this.adaptiveCompression = adaptiveCompression;
+            return this;
+        }
+
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        public Builder enableChunking(boolean enableChunking) {
+            this.enableChunking = enableChunking;
+            return this;
+        }
+
+        public Builder chunkingThreshold(int chunkingThreshold) {
+            this.chunkingThreshold = chunkingThreshold;
+            return this;
+        }
+
+        public Builder envelope(boolean envelope) {
+            this.envelope = envelope;
+            return this;
+        }
+
+        public Builder envelopeMaxMessages(int envelopeMaxMessages) {
+            this.envelopeMaxMessages = envelopeMaxMessages;
+            return this;
+        }
+
+        public Builder envelopeMaxBytes(int envelopeMaxBytes) {
+            this.envelopeMaxBytes = envelopeMaxBytes;
+            return this;
+        }
+
+        public Builder envelopeLingerTime(Duration envelopeLingerTime) {
+            this.envelopeLingerTime = envelopeLingerTime;
+            return this;
+        }
+
+        public Builder messageRoutingMode(MessageRoutingMode messageRoutingMode) {
+            this.messageRoutingMode = messageRoutingMode;
+            return this;
+        }
+
+        public Builder messageRouter(MessageRouter messageRouter) {
+            this.messageRouter = messageRouter;
+            return this;
+        }
+
         public ProducerHolder build() {
             return new ProducerHolder(this);
         }
@@ -1,16 +1,22 @@
 package com.sumwhy.pulsar.model;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.ToString;
+import org.springframework.util.StringUtils;
 
 /**
  * <p> topic 信息  </p>
  * <p> create 2021-08-27 16:29 by lesible </p>
+ * <p> 空的租户和命名空间统一规范为 null, 保证同一个 topic 的不同写法相等, 可以作为路由表的键 </p>
  *
  * @author 何嘉豪
  */
 @Getter
 @Setter
+@ToString
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class TopicInfo {
 
     /**
@@ -29,11 +35,20 @@ public class TopicInfo {
     private final String topic;
 
     private TopicInfo(Builder builder) {
-        this.tenant = builder.tenant;
-        this.namespace = builder.namespace;
+        this.tenant = StringUtils.hasLength(builder.tenant) ? builder.tenant : null;
+        this.namespace = StringUtils.hasLength(builder.namespace) ? builder.namespace : null;
         this.topic = builder.topic;
     }
 
+    /**
+     * 是否使用默认的租户和命名空间
+     *
+     * @return 租户和命名空间都没有设置时返回 true
+     */
+    public boolean isDefaultNamespace() {
+        return tenant == null && namespace == null;
+    }
+
     public static Builder builder(String topic) {
         return new Builder(topic);
     }
@@ -0,0 +1,60 @@
+package com.sumwhy.pulsar.producer;
+
+/**
+ * <p> @date: 2026-10-18 18:30</p>
+ * <p> 根据最近消息大小的指数移动平均决定是否压缩, 平均值超过阈值时开启, 低于阈值的 3/4 时关闭, 避免在阈值附近来回切换 </p>
+ * <p> 统计值的并发更新允许丢失, 只影响采样精度 </p>
+ *
+ * @author 何嘉豪
+ */
+public class AdaptiveCompression {
+
+    /**
+     * 平滑系数为 1/8
+     */
+    private static final int WEIGHT_SHIFT = 3;
+
+    /**
+     * 开启压缩的阈值, 单位 B
+     */
+    private final int threshold;
+
+    /**
+     * 关闭压缩的阈值, 单位 B
+     */
+    private final int lowWatermark;
+
+    private volatile long averageSize;
+
+    private volatile boolean compressing;
+
+    public AdaptiveCompression(int threshold) {
+        this.threshold = threshold;
+        this.lowWatermark = threshold - (threshold >> 2);
+    }
+
+    /**
+     * 记录一条消息的大小, 并返回是否应该压缩
+     *
+     * @param size 消息大小
+     * @return 是否压缩
+     */
+    public boolean shouldCompress(int size) {
+        long average = averageSize;
+        average += (size - average) >> WEIGHT_SHIFT;
+        averageSize = average;
+        if (compressing) {
+            if (average < lowWatermark) {
+                compressing = false;
+            }
+        } else if (average >= threshold) {
+            compressing = true;
+        }
+        return compressing;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+}
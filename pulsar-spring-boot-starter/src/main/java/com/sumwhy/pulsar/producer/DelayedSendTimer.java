@@ -0,0 +1,326 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p> @date: 2026-10-18 20:30</p>
+ * <p> 短延时消息的本地分层时间轮, 延时小于 {@link GlobalProducerProperties#getLocalDelayThreshold()} 的异步延时消息
+ * 在本地等待到期后直接发送, 不占用 broker 的延时投递索引 </p>
+ * <p> 只有存在消息的格子会进入 DelayQueue, 工作线程按格子而不是按 tick 唤醒; 超出本层范围的消息放入上一层, 到期前逐层下降 </p>
+ * <p> 等待中的消息只保存在内存中, 进程异常退出会丢失; 正常关闭时剩余消息会改为由 broker 在原定时间投递,
+ * 依赖 {@link com.sumwhy.pulsar.producer.collector.ProducerCollector} 保证在 producer 关闭之前完成 </p>
+ * <p> 消息在调度时编码, 到期时才选择 producer 构建, 不在等待期间持有 producer </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+@Component
+@DependsOn("producerCollector")
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class DelayedSendTimer implements DisposableBean {
+
+    private final long thresholdMillis;
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    /**
+     * 存在消息的格子, 按到期时间排序
+     */
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+
+    /**
+     * 最底层的时间轮, 由 this 保护
+     */
+    private TimingWheel wheel;
+
+    private volatile Thread worker;
+
+    private volatile boolean running;
+
+    public DelayedSendTimer(GlobalProducerProperties globalProducerProperties) {
+        this.thresholdMillis = globalProducerProperties.getLocalDelayThreshold().toMillis();
+        this.tickMillis = Math.max(1L, globalProducerProperties.getWheelTick().toMillis());
+        this.wheelSize = Math.max(2, globalProducerProperties.getWheelSize());
+    }
+
+    /**
+     * @param delayMillis 延时, 单位毫秒
+     * @return 是否由本地时间轮处理
+     */
+    public boolean accepts(long delayMillis) {
+        return delayMillis > 0 && delayMillis < thresholdMillis;
+    }
+
+    /**
+     * 到期后发送消息, 调用方需要保证到期前路由的 producer 不被关闭
+     *
+     * @param route       路由
+     * @param key         消息的 key, 为 null 时不设置
+     * @param value       {@link TopicRoute#toValue(Object)} 转换后的值
+     * @param delayMillis 延时, 单位毫秒
+     * @return 发送完成后完成
+     */
+    public CompletableFuture<MessageId> schedule(TopicRoute route, @Nullable String key, Object value, long delayMillis) {
+        startIfNecessary();
+        Task task = new Task(route, key, value, monotonicMillis() + delayMillis,
+                System.currentTimeMillis() + delayMillis);
+        boolean added;
+        synchronized (this) {
+            added = running && wheel.add(task);
+        }
+        if (!added) {
+            // 已经到期或者正在关闭, 直接发送, 关闭时交给 broker 延时投递
+            if (running) {
+                task.send();
+            } else {
+                task.sendByBroker();
+            }
+        }
+        return task.future;
+    }
+
+    private void startIfNecessary() {
+        if (worker != null) {
+            return;
+        }
+        synchronized (this) {
+            if (worker != null) {
+                return;
+            }
+            wheel = new TimingWheel(tickMillis, wheelSize, monotonicMillis());
+            running = true;
+            Thread thread = new Thread(this::work, "pulsar-delayed-sender");
+            thread.setDaemon(true);
+            thread.start();
+            worker = thread;
+        }
+    }
+
+    private void work() {
+        while (running) {
+            Bucket bucket;
+            try {
+                bucket = queue.poll(200L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (bucket == null) {
+                continue;
+            }
+            List<Task> due = new ArrayList<>();
+            synchronized (this) {
+                while (bucket != null) {
+                    wheel.advanceClock(bucket.expiration);
+                    // 高层格子中的消息重新放入低层, 已到期的取出发送
+                    bucket.flush(task -> {
+                        if (!wheel.add(task)) {
+                            due.add(task);
+                        }
+                    });
+                    bucket = queue.poll();
+                }
+            }
+            // 在锁外发送, producer 队列满时可能阻塞
+            due.forEach(Task::send);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Thread thread = worker;
+        if (thread == null) {
+            return;
+        }
+        List<Task> pending = new ArrayList<>();
+        synchronized (this) {
+            running = false;
+            // 未到期的格子 poll 不出来, 直接遍历
+            for (Bucket bucket : queue.toArray(new Bucket[0])) {
+                bucket.flush(pending::add);
+            }
+            queue.clear();
+        }
+        thread.interrupt();
+        if (!pending.isEmpty()) {
+            log.info("关闭时还有 {} 条本地延时消息未到期, 改为由 broker 延时投递", pending.size());
+        }
+        pending.forEach(Task::sendByBroker);
+    }
+
+    private static long monotonicMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * 一层时间轮, 范围为 tickMillis * wheelSize, 超出范围的放入上一层
+     */
+    private class TimingWheel {
+
+        private final long tickMillis;
+
+        private final long interval;
+
+        private final Bucket[] buckets;
+
+        private long currentTime;
+
+        private TimingWheel overflowWheel;
+
+        TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.interval = tickMillis * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMillis - startMillis % tickMillis;
+        }
+
+        /**
+         * @return 已到期时返回 false
+         */
+        boolean add(Task task) {
+            long expiration = task.expiration;
+            if (expiration < currentTime + tickMillis) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMillis;
+                Bucket bucket = buckets[(int) (virtualId % buckets.length)];
+                bucket.tasks.add(task);
+                // 格子的到期时间变化说明它被复用于新一轮, 需要重新进入队列
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel(interval, buckets.length, currentTime);
+            }
+            return overflowWheel.add(task);
+        }
+
+        void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - timeMillis % tickMillis;
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的一个格子, 只在持有 {@link DelayedSendTimer} 的锁时修改
+     */
+    private static class Bucket implements Delayed {
+
+        private final List<Task> tasks = new ArrayList<>();
+
+        private volatile long expiration = -1L;
+
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) {
+                return false;
+            }
+            this.expiration = expiration;
+            return true;
+        }
+
+        void flush(Consumer<Task> consumer) {
+            List<Task> flushed = new ArrayList<>(tasks);
+            tasks.clear();
+            expiration = -1L;
+            flushed.forEach(consumer);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration - monotonicMillis(), 0L), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+
+    /**
+     * 等待发送的消息
+     */
+    private static class Task {
+
+        private final TopicRoute route;
+
+        @Nullable
+        private final String key;
+
+        private final Object value;
+
+        /**
+         * 单调时钟的到期时间
+         */
+        private final long expiration;
+
+        /**
+         * 墙上时钟的投递时间, 交给 broker 投递时使用
+         */
+        private final long deliverAt;
+
+        private final CompletableFuture<MessageId> future = new CompletableFuture<>();
+
+        Task(TopicRoute route, @Nullable String key, Object value, long expiration, long deliverAt) {
+            this.route = route;
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+            this.deliverAt = deliverAt;
+        }
+
+        void send() {
+            send(false);
+        }
+
+        void sendByBroker() {
+            send(true);
+        }
+
+        private void send(boolean byBroker) {
+            try {
+                TypedMessageBuilder<?> builder = route.newEncodedMessage(key, value);
+                if (byBroker) {
+                    builder.deliverAt(deliverAt);
+                }
+                builder.sendAsync().whenComplete((messageId, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(messageId);
+                    }
+                });
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+}
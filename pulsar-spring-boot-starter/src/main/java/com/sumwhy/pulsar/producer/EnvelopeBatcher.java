@@ -0,0 +1,123 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.codec.EnvelopeFormat;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 21:45</p>
+ * <p> 把多条编码后的小消息装进一个信封发送, 消息数量, 大小或等待时间任一达到上限时发出, 格式见 {@link EnvelopeFormat} </p>
+ * <p> 同一个信封中的消息共享一个 messageId, 信封在持有锁时交给 producer, 信封之间的顺序与写入顺序一致 </p>
+ *
+ * @author 何嘉豪
+ */
+public class EnvelopeBatcher {
+
+    private final Producer<byte[]> producer;
+
+    private final int maxMessages;
+
+    private final int maxBytes;
+
+    private final long lingerMillis;
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * 正在装的信封, 为 null 时没有等待发送的消息, 由 this 保护
+     */
+    private ByteArrayOutputStream buffer;
+
+    private List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+
+    /**
+     * 每个信封的编号, 定时任务只发送创建它的那个信封
+     */
+    private long generation;
+
+    @SuppressWarnings("unchecked")
+    public EnvelopeBatcher(Producer<?> producer, int maxMessages, int maxBytes, long lingerMillis,
+                           ScheduledExecutorService flusher) {
+        this.producer = (Producer<byte[]>) producer;
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = maxBytes;
+        this.lingerMillis = Math.max(1L, lingerMillis);
+        this.flusher = flusher;
+    }
+
+    /**
+     * @param payload 编码后的消息
+     * @return 是否可以装进信封, 单条就超过信封大小的消息应直接发送
+     */
+    public boolean accepts(byte[] payload) {
+        return 1 + EnvelopeFormat.sizeOf(payload.length) <= maxBytes;
+    }
+
+    /**
+     * 装入一条消息
+     *
+     * @param payload 编码后的消息
+     * @return 信封发送完成后完成
+     */
+    public synchronized CompletableFuture<MessageId> add(byte[] payload) {
+        CompletableFuture<MessageId> future = new CompletableFuture<>();
+        if (buffer != null && buffer.size() + EnvelopeFormat.sizeOf(payload.length) > maxBytes) {
+            send();
+        }
+        if (buffer == null) {
+            buffer = EnvelopeFormat.newBuffer(Math.min(maxBytes, 4096));
+            long current = ++generation;
+            flusher.schedule(() -> flush(current), lingerMillis, TimeUnit.MILLISECONDS);
+        }
+        EnvelopeFormat.write(buffer, payload);
+        futures.add(future);
+        if (futures.size() >= maxMessages || buffer.size() >= maxBytes) {
+            send();
+        }
+        return future;
+    }
+
+    /**
+     * 立即发送正在装的信封, 关闭 producer 前调用
+     */
+    public synchronized void flush() {
+        if (buffer != null) {
+            send();
+        }
+    }
+
+    private synchronized void flush(long expected) {
+        if (buffer != null && generation == expected) {
+            send();
+        }
+    }
+
+    private void send() {
+        byte[] envelope = buffer.toByteArray();
+        List<CompletableFuture<MessageId>> sending = futures;
+        buffer = null;
+        futures = new ArrayList<>();
+        try {
+            producer.newMessage().value(envelope).property(EnvelopeFormat.PROPERTY, EnvelopeFormat.version())
+                    .sendAsync().whenComplete((messageId, e) -> {
+                        for (CompletableFuture<MessageId> future : sending) {
+                            if (e != null) {
+                                future.completeExceptionally(e);
+                            } else {
+                                future.complete(messageId);
+                            }
+                        }
+                    });
+        } catch (RuntimeException e) {
+            sending.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+}
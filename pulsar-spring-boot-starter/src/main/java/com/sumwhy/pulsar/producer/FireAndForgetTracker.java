@@ -0,0 +1,80 @@
+package com.sumwhy.pulsar.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.MessageId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * <p> @date: 2026-10-18 22:25</p>
+ * <p> 统计不关心结果的发送, 不把 future 交给调用方 </p>
+ * <p> 省掉的只是调用方处理 future 的代码: 每次发送创建一个只捕获 topic 地址的完成回调, whenComplete 也会为每条消息分配一个依赖 future,
+ * 分配次数与调用方自行 whenComplete 相同. 不按 topic 缓存回调, 按需创建的 topic 淘汰后不会留下常驻的回调 </p>
+ * <p> 计数使用 {@link LongAdder}, 多个 io 线程同时完成时不争用 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class FireAndForgetTracker {
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final SendErrorHandler errorHandler;
+
+    public FireAndForgetTracker(ObjectProvider<SendErrorHandler> errorHandler) {
+        this.errorHandler = errorHandler.getIfAvailable(() -> (topicUrl, e) ->
+                log.error("topic:{} 的消息发送失败,原因:{}", topicUrl, e.getMessage(), e));
+    }
+
+    /**
+     * @param topicUrl 完整的 topic 地址
+     * @return 完成回调
+     */
+    public BiConsumer<MessageId, Throwable> callback(String topicUrl) {
+        return (messageId, e) -> {
+            if (e == null) {
+                succeeded.increment();
+            } else {
+                failed(topicUrl, e);
+            }
+        };
+    }
+
+    /**
+     * 记录一次失败, 发送前就失败时直接调用
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @param e        失败原因
+     */
+    public void failed(String topicUrl, Throwable e) {
+        failed.increment();
+        try {
+            errorHandler.handleError(topicUrl, e);
+        } catch (RuntimeException ex) {
+            log.warn("topic:{} 的发送失败回调执行失败", topicUrl, ex);
+        }
+    }
+
+    /**
+     * @return 发送成功的数量
+     */
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    /**
+     * @return 发送失败的数量
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+}
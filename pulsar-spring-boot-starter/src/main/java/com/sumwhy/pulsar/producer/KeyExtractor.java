@@ -0,0 +1,52 @@
+package com.sumwhy.pulsar.producer;
+
+import java.util.function.Function;
+
+/**
+ * <p> @date: 2026-10-18 19:10</p>
+ * <p> 从消息中提取 key 的扩展点, 注册为 spring bean 即可生效, 发送时没有指定 key 的消息会按类型自动设置 key </p>
+ * <p> 同一个 key 的消息由同一个 producer 发送, 在 Key_Shared 订阅中由同一个消费者按顺序消费 </p>
+ *
+ * @param <T> 消息类型
+ * @author 何嘉豪
+ */
+public interface KeyExtractor<T> {
+
+    /**
+     * 适用的消息类型, 子类和实现类同样适用, 多个匹配时最具体的类型优先
+     *
+     * @return 消息类型
+     */
+    Class<T> getType();
+
+    /**
+     * 提取 key
+     *
+     * @param msg 消息
+     * @return key, 返回 null 时不设置 key
+     */
+    String extractKey(T msg);
+
+    /**
+     * 由 lambda 创建
+     *
+     * @param type      消息类型
+     * @param extractor 提取方式
+     * @param <T>       消息类型
+     * @return KeyExtractor
+     */
+    static <T> KeyExtractor<T> of(Class<T> type, Function<? super T, String> extractor) {
+        return new KeyExtractor<T>() {
+            @Override
+            public Class<T> getType() {
+                return type;
+            }
+
+            @Override
+            public String extractKey(T msg) {
+                return extractor.apply(msg);
+            }
+        };
+    }
+
+}
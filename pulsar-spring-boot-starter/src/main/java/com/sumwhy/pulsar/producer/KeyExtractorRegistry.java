@@ -0,0 +1,78 @@
+package com.sumwhy.pulsar.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p> @date: 2026-10-18 19:15</p>
+ * <p> key 提取方式的注册中心, 按消息的实际类型查找, 查找结果会缓存 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
+public class KeyExtractorRegistry {
+
+    /**
+     * 类型和提取方式的映射, 只在构造时写入
+     */
+    private final Map<Class<?>, KeyExtractor<?>> extractors = new HashMap<>();
+
+    /**
+     * 实际类型和提取方式的缓存, 没有匹配时为 null
+     */
+    private final ClassValue<KeyExtractor<Object>> extractorsByType = new ClassValue<KeyExtractor<Object>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected KeyExtractor<Object> computeValue(Class<?> type) {
+            // 先按父类链查找, 再按接口查找
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                KeyExtractor<?> extractor = extractors.get(current);
+                if (extractor != null) {
+                    return (KeyExtractor<Object>) extractor;
+                }
+            }
+            for (Class<?> candidate : ClassUtils.getAllInterfacesForClassAsSet(type)) {
+                KeyExtractor<?> extractor = extractors.get(candidate);
+                if (extractor != null) {
+                    return (KeyExtractor<Object>) extractor;
+                }
+            }
+            return null;
+        }
+    };
+
+    public KeyExtractorRegistry(ObjectProvider<KeyExtractor<?>> keyExtractors) {
+        keyExtractors.orderedStream().forEach(extractor -> {
+            KeyExtractor<?> previous = extractors.putIfAbsent(extractor.getType(), extractor);
+            if (previous != null) {
+                throw new IllegalStateException("duplicate key extractor for type " + extractor.getType().getName());
+            }
+            log.debug("注册类型为 [{}] 的 key 提取方式", extractor.getType().getName());
+        });
+    }
+
+    /**
+     * 按消息的实际类型提取 key
+     *
+     * @param msg 消息
+     * @return key, 没有匹配的提取方式时返回 null
+     */
+    @Nullable
+    public String extractKey(Object msg) {
+        if (extractors.isEmpty()) {
+            return null;
+        }
+        KeyExtractor<Object> extractor = extractorsByType.get(msg.getClass());
+        return extractor == null ? null : extractor.extractKey(msg);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.sumwhy.pulsar.producer;
+
+import org.apache.pulsar.client.api.Producer;
+
+/**
+ * <p> @date: 2026-10-18 22:00</p>
+ * <p> producer 创建和关闭的回调, 通过 {@link com.sumwhy.pulsar.producer.collector.ProducerCollector#addListener(ProducerListener)}
+ * 注册, 注册时会先回调一次已存在的 producer </p>
+ * <p> 回调可能重复, 实现需要幂等 </p>
+ *
+ * @author 何嘉豪
+ */
+public interface ProducerListener {
+
+    /**
+     * producer 创建完成, 包括按需创建的 producer
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @param producer 生产者
+     */
+    void producerAdded(String topicUrl, Producer<?> producer);
+
+    /**
+     * producer 被替换或淘汰, 即将关闭
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @param producer 生产者
+     */
+    default void producerRemoved(String topicUrl, Producer<?> producer) {
+    }
+
+}
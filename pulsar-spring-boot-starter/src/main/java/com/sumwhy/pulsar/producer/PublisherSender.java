@@ -0,0 +1,105 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.model.BatchSendResult;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> @date: 2026-10-18 17:50</p>
+ * <p> 订阅 {@link org.reactivestreams.Publisher} 并发送, 先请求 maxInFlight 条, 之后每确认一条再请求一条 </p>
+ * <p> 单独成类, 没有 reactive-streams 依赖时不会加载 </p>
+ *
+ * @author 何嘉豪
+ */
+public class PublisherSender implements Subscriber<Object> {
+
+    private final StreamSender sender;
+
+    private final CompletableFuture<BatchSendResult> result = new CompletableFuture<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 待请求的数量, 由 {@link #drainRequests()} 串行地交给 subscription
+     */
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger requesting = new AtomicInteger();
+
+    private volatile Subscription subscription;
+
+    private volatile boolean done;
+
+    public PublisherSender(StreamSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * @return 上游结束且所有在途消息确认后完成
+     */
+    public CompletableFuture<BatchSendResult> getResult() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        request(sender.getMaxInFlight());
+    }
+
+    @Override
+    public void onNext(Object msg) {
+        inFlight.incrementAndGet();
+        sender.sendOne(msg).whenComplete((messageId, e) -> {
+            sender.record(e);
+            if (inFlight.decrementAndGet() == 0 && done) {
+                result.complete(sender.result());
+            } else if (!done) {
+                request(1);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        sender.fail(throwable);
+        onComplete();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        if (inFlight.get() == 0) {
+            result.complete(sender.result());
+        }
+    }
+
+    private void request(long n) {
+        requested.addAndGet(n);
+        drainRequests();
+    }
+
+    /**
+     * 确认回调运行在不同的线程上, reactive-streams 要求对 subscription 的调用串行进行
+     */
+    private void drainRequests() {
+        if (requesting.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            long n = requested.getAndSet(0);
+            if (n > 0) {
+                subscription.request(n);
+            }
+        } while (requesting.decrementAndGet() != 0);
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.sumwhy.pulsar.producer;
+
+/**
+ * <p> @date: 2026-10-18 22:25</p>
+ * <p> 不关心结果的发送 ({@link com.sumwhy.pulsar.PulsarTemplate#sendAndForget(String, Object)}) 失败时的回调,
+ * 注册为 spring bean 即可生效, 没有注册时只记录日志 </p>
+ * <p> 为了不给每条消息分配回调, 这里拿不到失败的消息本身; 在 pulsar 的 io 线程上调用, 不能阻塞 </p>
+ *
+ * @author 何嘉豪
+ */
+@FunctionalInterface
+public interface SendErrorHandler {
+
+    /**
+     * 处理发送失败
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @param e        失败原因
+     */
+    void handleError(String topicUrl, Throwable e);
+
+}
@@ -0,0 +1,29 @@
+package com.sumwhy.pulsar.producer;
+
+/**
+ * <p> @date: 2026-10-18 22:15</p>
+ * <p> 记录 {@link com.sumwhy.pulsar.PulsarTemplate} 观察到的发送耗时, 注册为 spring bean 即可生效, 单位均为纳秒 </p>
+ * <p> 在发送线程和 pulsar 的 io 线程上调用, 实现不能阻塞, 也应避免分配对象 </p>
+ *
+ * @author 何嘉豪
+ */
+public interface SendLatencyRecorder {
+
+    /**
+     * 同步发送的耗时, 从调用到返回, 失败时同样记录
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @param nanos    耗时
+     */
+    void recordSync(String topicUrl, long nanos);
+
+    /**
+     * 异步发送的耗时, 两者之和为从调用到 future 完成的总耗时
+     *
+     * @param topicUrl     完整的 topic 地址
+     * @param blockedNanos 调用 sendAsync 到返回的耗时, 包括编码和队列满时的阻塞
+     * @param ackNanos     sendAsync 返回到 future 完成的耗时, 主要是等待服务端确认
+     */
+    void recordAsync(String topicUrl, long blockedNanos, long ackNanos);
+
+}
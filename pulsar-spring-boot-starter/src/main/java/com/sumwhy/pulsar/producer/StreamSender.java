@@ -0,0 +1,100 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.model.BatchSendResult;
+import org.apache.pulsar.client.api.MessageId;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p> @date: 2026-10-18 17:45</p>
+ * <p> 流式批量发送, 同时在途的消息数量不超过 maxInFlight, 只统计数量和第一个异常, 内存占用与输入大小无关 </p>
+ * <p> maxInFlight 应不大于 producer 的 maxPendingMessages, 否则 producer 没有开启 blockIfQueueFull 时会因队列满而失败 </p>
+ *
+ * @author 何嘉豪
+ */
+public class StreamSender {
+
+    private final TopicRoute route;
+
+    private final int maxInFlight;
+
+    private final KeyExtractorRegistry keyExtractors;
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+    public StreamSender(TopicRoute route, int maxInFlight, KeyExtractorRegistry keyExtractors) {
+        this.route = route;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.keyExtractors = keyExtractors;
+    }
+
+    /**
+     * 阻塞发送迭代器中的全部消息, 在途数量达到上限时等待, 返回前等待所有消息确认
+     * <p>
+     * 线程被中断时停止读取迭代器, 直接返回当前的统计
+     *
+     * @param msgs 消息
+     * @return 汇总结果
+     */
+    public BatchSendResult send(Iterator<?> msgs) {
+        Semaphore window = new Semaphore(maxInFlight);
+        try {
+            while (msgs.hasNext()) {
+                window.acquire();
+                sendOne(msgs.next()).whenComplete((messageId, e) -> {
+                    record(e);
+                    window.release();
+                });
+            }
+            // 取回全部许可即所有在途消息都已完成
+            window.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+        return result();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 发送单条消息, 构建消息时的异常同样以失败的 future 返回
+     */
+    CompletableFuture<MessageId> sendOne(Object msg) {
+        try {
+            return route.newMessage(keyExtractors.extractKey(msg), msg).sendAsync();
+        } catch (RuntimeException e) {
+            CompletableFuture<MessageId> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    void record(Throwable e) {
+        if (e == null) {
+            succeeded.increment();
+        } else {
+            failed.increment();
+            fail(e);
+        }
+    }
+
+    void fail(Throwable e) {
+        firstError.compareAndSet(null, e);
+    }
+
+    BatchSendResult result() {
+        return new BatchSendResult(succeeded.sum(), failed.sum(), firstError.get());
+    }
+
+}
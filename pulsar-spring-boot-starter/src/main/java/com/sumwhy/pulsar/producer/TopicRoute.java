@@ -0,0 +1,386 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.codec.MessageCodec;
+import com.sumwhy.pulsar.model.ProducerHolder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> @date: 2026-10-18 10:12</p>
+ * <p> 路由表中的一条记录, topic 在启动时已经解析为完整地址并绑定到 producer </p>
+ *
+ * @author 何嘉豪
+ */
+@Getter
+public class TopicRoute {
+
+    /**
+     * 记录使用时间的精度
+     */
+    private static final long TOUCH_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 解析后的完整 topic 地址
+     */
+    private final String topicUrl;
+
+    /**
+     * topic 对应的生产者, 多个时按线程或 key 分散发送, 见 {@link ProducerHolder#getProducerCount()}
+     */
+    private final Producer<?>[] producers;
+
+    /**
+     * producer 的消息类型, byte[] 表示由发送方自行序列化
+     */
+    private final Class<?> msgType;
+
+    /**
+     * 消息的编解码方式
+     */
+    private final MessageCodec codec;
+
+    /**
+     * producer 的 schema 是否为 BYTES, 是的话发送前需要由 codec 编码
+     */
+    private final boolean bytesSchema;
+
+    /**
+     * 开启压缩的 producer, 只在自适应压缩时存在, 与 {@link #producers} 一一对应
+     */
+    @Nullable
+    private final Producer<?>[] compressedProducers;
+
+    /**
+     * 自适应压缩的采样, 为 null 时不切换
+     */
+    @Nullable
+    private final AdaptiveCompression adaptiveCompression;
+
+    /**
+     * 发送大消息的分块 producer, 不批量发送, 避免大消息阻塞批量发送的小消息
+     */
+    @Nullable
+    private final Producer<?> chunkProducer;
+
+    /**
+     * 超过该大小的消息由 {@link #chunkProducer} 发送, 单位 B
+     */
+    private final int chunkingThreshold;
+
+    /**
+     * 信封模式的打包器, 为 null 时逐条发送
+     */
+    @Nullable
+    private final EnvelopeBatcher envelopeBatcher;
+
+    /**
+     * 是否为按需创建的路由, 只有按需创建的路由会被淘汰, 才需要记录使用情况
+     */
+    private volatile boolean lazy;
+
+    /**
+     * 最后一次使用的时间, 只在按需创建的路由上更新
+     */
+    private volatile long lastAccessNanos = System.nanoTime();
+
+    /**
+     * 长期持有路由的数量, 如发送句柄, 流式发送和本地延时发送, 淘汰后为 -1
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger holders = new AtomicInteger();
+
+    /**
+     * 以自身完成的 future, 异步发送命中路由表时不必每次分配
+     */
+    @Getter(AccessLevel.NONE)
+    private final CompletableFuture<TopicRoute> completed = CompletableFuture.completedFuture(this);
+
+    public TopicRoute(String topicUrl, Producer<?> producer, Class<?> msgType, MessageCodec codec, boolean bytesSchema) {
+        this(topicUrl, new Producer<?>[]{producer}, msgType, codec, bytesSchema);
+    }
+
+    public TopicRoute(String topicUrl, Producer<?>[] producers, Class<?> msgType, MessageCodec codec, boolean bytesSchema) {
+        this(topicUrl, producers, msgType, codec, bytesSchema, null, null, null, 0);
+    }
+
+    public TopicRoute(String topicUrl, Producer<?>[] producers, Class<?> msgType, MessageCodec codec, boolean bytesSchema,
+                      @Nullable Producer<?>[] compressedProducers, @Nullable AdaptiveCompression adaptiveCompression,
+                      @Nullable Producer<?> chunkProducer, int chunkingThreshold) {
+        this(topicUrl, producers, msgType, codec, bytesSchema, compressedProducers, adaptiveCompression, chunkProducer,
+                chunkingThreshold, null);
+    }
+
+    public TopicRoute(String topicUrl, Producer<?>[] producers, Class<?> msgType, MessageCodec codec, boolean bytesSchema,
+                      @Nullable Producer<?>[] compressedProducers, @Nullable AdaptiveCompression adaptiveCompression,
+                      @Nullable Producer<?> chunkProducer, int chunkingThreshold,
+                      @Nullable EnvelopeBatcher envelopeBatcher) {
+        if (producers.length == 0) {
+            throw new IllegalArgumentException("at least one producer is required for topic [" + topicUrl + "]");
+        }
+        if ((compressedProducers == null) != (adaptiveCompression == null)
+                || compressedProducers != null && compressedProducers.length != producers.length) {
+            throw new IllegalArgumentException("adaptive compression of topic [" + topicUrl
+                    + "] requires one compressed producer for each producer");
+        }
+        this.topicUrl = topicUrl;
+        this.producers = producers;
+        this.msgType = msgType;
+        this.codec = codec;
+        this.bytesSchema = bytesSchema;
+        this.compressedProducers = compressedProducers;
+        this.adaptiveCompression = adaptiveCompression;
+        this.chunkProducer = chunkProducer;
+        this.chunkingThreshold = chunkingThreshold;
+        this.envelopeBatcher = envelopeBatcher;
+    }
+
+    /**
+     * 标记为按需创建的路由, 在发布给其他线程之前调用
+     */
+    public void markLazy() {
+        this.lazy = true;
+    }
+
+    /**
+     * 记录一次使用, 同一毫秒内的多次使用只写一次, 避免发送线程争抢同一个缓存行
+     */
+    public void touch() {
+        if (lazy) {
+            long now = System.nanoTime();
+            if (now - lastAccessNanos > TOUCH_RESOLUTION_NANOS) {
+                lastAccessNanos = now;
+            }
+        }
+    }
+
+    /**
+     * 长期持有路由前调用, 持有期间不会被淘汰
+     *
+     * @return 路由已被淘汰时返回 false, 需要重新获取路由
+     */
+    public boolean retain() {
+        while (true) {
+            int current = holders.get();
+            if (current < 0) {
+                return false;
+            }
+            if (holders.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放 {@link #retain()} 的持有, 并记录一次使用
+     */
+    public void release() {
+        holders.decrementAndGet();
+        touch();
+    }
+
+    /**
+     * 没有持有者时标记为已淘汰, 之后 {@link #retain()} 失败
+     *
+     * @return 是否标记成功
+     */
+    public boolean retire() {
+        return holders.compareAndSet(0, -1);
+    }
+
+    /**
+     * @return 是否已被淘汰, 已淘汰的路由的 producer 即将关闭
+     */
+    public boolean isRetired() {
+        return holders.get() < 0;
+    }
+
+    /**
+     * @return 以自身完成的 future
+     */
+    public CompletableFuture<TopicRoute> asFuture() {
+        return completed;
+    }
+
+    /**
+     * 按当前线程选择 producer, 同一线程总是使用同一个 producer, 保证单个线程内的发送顺序
+     *
+     * @return 生产者
+     */
+    public Producer<?> getProducer() {
+        return byThread(producers);
+    }
+
+    private static Producer<?> byThread(Producer<?>[] producers) {
+        if (producers.length == 1) {
+            return producers[0];
+        }
+        return producers[(int) (Thread.currentThread().getId() % producers.length)];
+    }
+
+    /**
+     * 根据编码后的值选择 producer, 开启自适应压缩时按最近的消息大小在压缩和不压缩的 producer 之间切换
+     * <p>
+     * 切换前后的消息由不同的 producer 发送, 彼此之间不保证顺序, 需要顺序的消息应当带上 key
+     *
+     * @param value producer 接受的值
+     * @return 生产者
+     */
+    public Producer<?> selectProducer(Object value) {
+        return selectProducer(value, null);
+    }
+
+    /**
+     * 根据编码后的值和 key 选择 producer, 有 key 时按 key 的哈希选择, 超过分块阈值的消息交给分块 producer
+     * <p>
+     * 有 key 的消息不参与自适应压缩的切换, 始终使用普通 producer, 与 {@link #getProducer(String)} 一致, 保证同一个 key 的顺序;
+     * 分块 producer 发送的大消息与其他消息之间不保证顺序
+     *
+     * @param value producer 接受的值
+     * @param key   消息的 key
+     * @return 生产者
+     */
+    public Producer<?> selectProducer(Object value, @Nullable String key) {
+        if (chunkProducer != null && value instanceof byte[] && ((byte[]) value).length > chunkingThreshold) {
+            return chunkProducer;
+        }
+        Producer<?>[] lane = producers;
+        AdaptiveCompression adaptiveCompression = this.adaptiveCompression;
+        if (key == null && adaptiveCompression != null && value instanceof byte[]
+                && adaptiveCompression.shouldCompress(((byte[]) value).length)) {
+            lane = compressedProducers;
+        }
+        return key == null ? byThread(lane) : byKey(lane, key);
+    }
+
+    /**
+     * 按 key 的哈希选择 producer, 同一个 key 总是使用同一个 producer, 保证单个 key 的发送顺序
+     *
+     * @param key 消息的 key, 为 null 时按线程选择
+     * @return 生产者
+     */
+    public Producer<?> getProducer(@Nullable String key) {
+        return key == null ? getProducer() : byKey(producers, key);
+    }
+
+    private static Producer<?> byKey(Producer<?>[] producers, String key) {
+        if (producers.length == 1) {
+            return producers[0];
+        }
+        return producers[(key.hashCode() & Integer.MAX_VALUE) % producers.length];
+    }
+
+    /**
+     * 是否使用了指定的 producer
+     *
+     * @param producer 生产者
+     * @return 是否使用
+     */
+    public boolean uses(Producer<?> producer) {
+        for (Producer<?> candidate : getAllProducers()) {
+            if (candidate == producer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 包括压缩 producer 和分块 producer 在内的全部 producer
+     */
+    public Producer<?>[] getAllProducers() {
+        if (compressedProducers == null && chunkProducer == null) {
+            return producers;
+        }
+        List<Producer<?>> all = new ArrayList<>(Arrays.asList(producers));
+        if (compressedProducers != null) {
+            all.addAll(Arrays.asList(compressedProducers));
+        }
+        if (chunkProducer != null) {
+            all.add(chunkProducer);
+        }
+        return all.toArray(new Producer<?>[0]);
+    }
+
+    /**
+     * 选择 producer 并构建消息
+     *
+     * @param msg 消息
+     * @return 带类型的消息建造者
+     */
+    public TypedMessageBuilder<Object> newMessage(Object msg) {
+        return newMessage(null, msg);
+    }
+
+    /**
+     * 选择 producer 并构建带 key 的消息, 同一个 key 的消息由同一个 producer 发送
+     *
+     * @param key 消息的 key, 为 null 时不设置
+     * @param msg 消息
+     * @return 带类型的消息建造者
+     */
+    public TypedMessageBuilder<Object> newMessage(@Nullable String key, Object msg) {
+        return newEncodedMessage(key, toValue(msg));
+    }
+
+    /**
+     * 以已经转换好的值选择 producer 并构建消息, 用于先编码, 稍后才发送的场景
+     *
+     * @param key   消息的 key, 为 null 时不设置
+     * @param value {@link #toValue(Object)} 转换后的值
+     * @return 带类型的消息建造者
+     */
+    @SuppressWarnings("unchecked")
+    public TypedMessageBuilder<Object> newEncodedMessage(@Nullable String key, Object value) {
+        Producer<Object> producer = (Producer<Object>) selectProducer(value, key);
+        TypedMessageBuilder<Object> builder = producer.newMessage().value(value);
+        return key == null ? builder : builder.key(key);
+    }
+
+    /**
+     * 将消息转换为 producer 接受的值, BYTES schema 由 codec 编码, 其他 schema 直接交给 producer 编码
+     *
+     * @param msg 消息
+     * @return producer 接受的值
+     */
+    public Object toValue(Object msg) {
+        if (bytesSchema) {
+            return toBytes(msg);
+        }
+        if (!msgType.isInstance(msg)) {
+            throw new IllegalArgumentException("the producer of topic [" + topicUrl + "] accepts "
+                    + msgType.getName() + ", but got " + msg.getClass().getName());
+        }
+        return msg;
+    }
+
+    /**
+     * 将消息转换为 byte 数组, byte 数组原样返回, 字符串按 UTF-8 编码, 其他对象交给 codec
+     *
+     * @param msg 消息
+     * @return byte 数组
+     */
+    public byte[] toBytes(Object msg) {
+        if (msg instanceof byte[]) {
+            return (byte[]) msg;
+        }
+        if (msg instanceof String) {
+            return ((String) msg).getBytes(StandardCharsets.UTF_8);
+        }
+        if (msg instanceof CharSequence) {
+            return msg.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return codec.encode(msg);
+    }
+
+}
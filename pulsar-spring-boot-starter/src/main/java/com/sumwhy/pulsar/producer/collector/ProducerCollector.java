@@ -1,27 +1,38 @@
 package com.sumwhy.pulsar.producer.collector;
 
 import com.sumwhy.pulsar.annotation.PulsarProducer;
+import com.sumwhy.pulsar.codec.MessageCodec;
+import com.sumwhy.pulsar.codec.MessageCodecRegistry;
 import com.sumwhy.pulsar.exception.InitFailedException;
+import com.sumwhy.pulsar.exception.NoSuchTopicException;
 import com.sumwhy.pulsar.model.ProducerHolder;
+import com.sumwhy.pulsar.model.TopicInfo;
+import com.sumwhy.pulsar.producer.AdaptiveCompression;
+import com.sumwhy.pulsar.producer.EnvelopeBatcher;
 import com.sumwhy.pulsar.producer.IProducerFactory;
-import com.sumwhy.pulsar.util.SchemaUtil;
+import com.sumwhy.pulsar.producer.ProducerListener;
+import com.sumwhy.pulsar.producer.TopicRoute;
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
 import com.sumwhy.pulsar.util.TopicBuilder;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.common.schema.SchemaType;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.EmbeddedValueResolverAware;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 import org.springframework.util.StringValueResolver;
 
 import java.time.Duration;
-import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -32,34 +43,84 @@ import java.util.stream.Collectors;
 @Slf4j
 @Configuration
 @ConditionalOnProperty(name = "pulsar.enabled", havingValue = "true", matchIfMissing = true)
-public class ProducerCollector implements BeanPostProcessor, EmbeddedValueResolverAware {
+public class ProducerCollector implements BeanPostProcessor, EmbeddedValueResolverAware, InitializingBean, DisposableBean {
+
+    /**
+     * 启动报告中列出的最慢 topic 数量
+     */
+    private static final int SLOW_REPORT_SIZE = 10;
+
+    /**
+     * 按需创建的 producer 淘汰后延迟关闭的时间, 单位毫秒
+     */
+    private static final long EVICT_CLOSE_DELAY_MILLIS = 1000L;
 
     /**
      * topic 和 producer 的映射
      */
     private final Map<String, Producer<?>> producerMapping = new ConcurrentHashMap<>();
 
+    /**
+     * 调用方传入的 topic 和路由的映射, 启动时预先计算, 发送时直接命中, 不再解析 topic
+     */
+    private final Map<String, TopicRoute> topicRoutes = new ConcurrentHashMap<>();
+
+    /**
+     * 调用方传入的 topic 信息和路由的映射, 第一次发送时解析并缓存
+     */
+    private final Map<TopicInfo, TopicRoute> topicInfoRoutes = new ConcurrentHashMap<>();
+
+    /**
+     * 按需创建的 producer, 以完整 topic 地址为键, 数量和空闲时间受 {@link GlobalProducerProperties} 限制,
+     * 创建完成后同时缓存到调用方写法对应的路由表中
+     */
+    private final ConcurrentMap<String, CompletableFuture<TopicRoute>> lazyRoutes = new ConcurrentHashMap<>();
+
+    /**
+     * 启动时创建的路由, 关闭时统一关闭其中的 producer
+     */
+    private final List<TopicRoute> createdRoutes = new CopyOnWriteArrayList<>();
+
+    /**
+     * producer 创建和关闭的回调
+     */
+    private final List<ProducerListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 定时关闭空闲的按需 producer
+     */
+    @Nullable
+    private ScheduledExecutorService evictor;
+
+    /**
+     * 按等待时间发送信封, 第一个开启信封模式的 producer 创建时初始化
+     */
+    @Nullable
+    private volatile ScheduledExecutorService envelopeFlusher;
+
     private final PulsarClient pulsarClient;
 
     private final TopicBuilder topicBuilder;
 
+    private final MessageCodecRegistry codecRegistry;
+
+    private final GlobalProducerProperties globalProducerProperties;
+
     private StringValueResolver stringValueResolver;
 
-    public ProducerCollector(PulsarClient pulsarClient, TopicBuilder topicBuilder) {
+    public ProducerCollector(PulsarClient pulsarClient, TopicBuilder topicBuilder, MessageCodecRegistry codecRegistry,
+                             GlobalProducerProperties globalProducerProperties) {
         this.pulsarClient = pulsarClient;
         this.topicBuilder = topicBuilder;
+        this.codecRegistry = codecRegistry;
+        this.globalProducerProperties = globalProducerProperties;
     }
 
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
         Class<?> beanClass = bean.getClass();
         if (beanClass.isAnnotationPresent(PulsarProducer.class) && bean instanceof IProducerFactory) {
-            producerMapping.putAll(((IProducerFactory) bean).getProducersInfo().entrySet().stream()
-                    .collect(Collectors.toMap(
-                            // 实际 topic 作为键
-                            entry -> topicBuilder.buildTopicUrl(entry.getKey()),
-                            // producer
-                            entry -> createProducer(entry.getValue()))));
+            createProducers(((IProducerFactory) bean).getProducersInfo().values());
         }
         if (bean instanceof Producer) {
             Producer<?> producer = (Producer<?>) bean;
@@ -74,57 +135,280 @@ public class ProducerCollector implements BeanPostProcessor, EmbeddedValueResolv
                     throw new RuntimeException("producer 关闭失败", e);
                 }
                 producerMapping.put(topic, producer);
+                notifyRemoved(topic, oldValue);
+                // 指向旧 producer 的路由全部失效
+                topicRoutes.values().removeIf(route -> route.uses(oldValue));
+                topicInfoRoutes.values().removeIf(route -> route.uses(oldValue));
             }
+            // 无法从 producer 上获取 schema, 按 byte[] 处理
+            topicRoutes.put(topic, new TopicRoute(topic, producer, byte[].class, codecRegistry.codec("", byte[].class), true));
+            notifyAdded(topic, producer);
             log.debug("topic:{} 的生产者注册成功", topic);
         }
         return bean;
     }
 
     /**
-     * 初始化 producer 对象
+     * 并行异步创建 producer, 并发数和总超时时间由 {@link GlobalProducerProperties} 控制, 全部成功后注册到路由表
+     *
+     * @param producerHolders producer 信息
+     */
+    private void createProducers(Collection<ProducerHolder> producerHolders) {
+        if (producerHolders.isEmpty()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        long deadline = begin + globalProducerProperties.getCreateTimeout().toNanos();
+        Semaphore permits = new Semaphore(Math.max(1, globalProducerProperties.getCreateConcurrency()));
+        List<ProducerCreation> creations = new ArrayList<>(producerHolders.size());
+        try {
+            for (ProducerHolder producerHolder : producerHolders) {
+                if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException("等待创建许可超时");
+                }
+                ProducerCreation creation = prepare(producerHolder);
+                creations.add(creation);
+                creation.start().whenComplete((producer, e) -> permits.release());
+            }
+            CompletableFuture.allOf(creations.stream().map(ProducerCreation::getFuture).toArray(CompletableFuture[]::new))
+                    .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(creations);
+            throw new InitFailedException("初始化生产者被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            closeQuietly(creations);
+            String pending = creations.stream().filter(creation -> !creation.getFuture().isDone())
+                    .map(ProducerCreation::getTopicUrl).collect(Collectors.joining(","));
+            log.error("初始化生产者失败, 未完成的 topic: [{}]", pending);
+            throw new InitFailedException("初始化生产者失败, 未完成的 topic: [" + pending + "]",
+                    e instanceof ExecutionException ? e.getCause() : e);
+        } catch (RuntimeException e) {
+            // prepare 失败时 (如 codec 名称错误) 关闭已经开始创建的 producer
+            closeQuietly(creations);
+            throw e;
+        }
+        creations.forEach(this::register);
+        report(creations, System.nanoTime() - begin);
+    }
+
+    /**
+     * 根据 producer 信息准备 builder
      *
      * @param producerHolder producer 信息
-     * @return 生产者
+     * @return 待创建的 producer
      */
-    private Producer<?> createProducer(ProducerHolder producerHolder) {
+    private ProducerCreation prepare(ProducerHolder producerHolder) {
         String topic = stringValueResolver.resolveStringValue(producerHolder.getTopic());
-        try {
-            Schema<?> schema = SchemaUtil.schema(producerHolder.getMsgType());
-
-            String producerName = producerHolder.getProducerName();
-
-            if (!StringUtils.hasLength(producerName)) {
-                producerName = topic + "-producer" + UUID.randomUUID();
-            }
-            String tenant = stringValueResolver.resolveStringValue(producerHolder.getTenant());
-            String namespace = stringValueResolver.resolveStringValue(producerHolder.getNamespace());
-            ProducerBuilder<?> builder = pulsarClient.newProducer(schema)
-                    .topic(topicBuilder.buildTopicUrl(tenant, namespace, topic)).producerName(producerName)
-                    .blockIfQueueFull(producerHolder.isBlockIfQueueFull())
-                    .enableBatching(producerHolder.isEnableBatching())
-                    .batchingMaxBytes(producerHolder.getBatchingMaxBytes())
-                    .batchingMaxMessages(producerHolder.getBatchingMaxMessages());
-            Duration sendTimeout = producerHolder.getSendTimeout();
-            Duration batchingMaxPublishDelay = producerHolder.getBatchingMaxPublishDelay();
-            if (sendTimeout != null) {
-                builder.sendTimeout((int) sendTimeout.getSeconds(), TimeUnit.SECONDS);
-            }
-            if (batchingMaxPublishDelay != null) {
-                builder.batchingMaxPublishDelay(batchingMaxPublishDelay.toMillis(), TimeUnit.MILLISECONDS);
-            }
-            Producer<?> producer = builder.create();
-            log.debug("初始化 topic 为 [{}] 的生产者成功", topic);
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                try {
-                    producer.close();
-                } catch (PulsarClientException e) {
-                    log.error("停止生产者失败,producer:{}", producer.getProducerName(), e);
+        Class<?> msgType = producerHolder.getMsgType() == null ? byte[].class : producerHolder.getMsgType();
+        MessageCodec codec = codecRegistry.codec(producerHolder.getCodec(), msgType);
+        Schema<?> schema = codec.schema(msgType);
+
+        String producerName = producerHolder.getProducerName();
+
+        if (!StringUtils.hasLength(producerName)) {
+            producerName = topic + "-producer" + UUID.randomUUID();
+        }
+        String tenant = stringValueResolver.resolveStringValue(producerHolder.getTenant());
+        String namespace = stringValueResolver.resolveStringValue(producerHolder.getNamespace());
+        String topicUrl = topicBuilder.buildTopicUrl(tenant, namespace, topic);
+        ProducerBuilder<?> builder = pulsarClient.newProducer(schema)
+                .topic(topicUrl).producerName(producerName)
+                .blockIfQueueFull(producerHolder.isBlockIfQueueFull())
+                .enableBatching(producerHolder.isEnableBatching())
+                .batchingMaxBytes(producerHolder.getBatchingMaxBytes())
+                .batchingMaxMessages(producerHolder.getBatchingMaxMessages());
+        Duration sendTimeout = producerHolder.getSendTimeout();
+        Duration batchingMaxPublishDelay = producerHolder.getBatchingMaxPublishDelay();
+        if (sendTimeout != null) {
+            builder.sendTimeout((int) sendTimeout.getSeconds(), TimeUnit.SECONDS);
+        }
+        if (batchingMaxPublishDelay != null) {
+            builder.batchingMaxPublishDelay(batchingMaxPublishDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (producerHolder.isKeyBasedBatching()) {
+            builder.batcherBuilder(BatcherBuilder.KEY_BASED);
+        }
+        if (producerHolder.getMaxPendingMessages() > 0) {
+            builder.maxPendingMessages(producerHolder.getMaxPendingMessages());
+        }
+        if (producerHolder.getMaxPendingMessagesAcrossPartitions() > 0) {
+            builder.maxPendingMessagesAcrossPartitions(producerHolder.getMaxPendingMessagesAcrossPartitions());
+        }
+        if (producerHolder.getMessageRoutingMode() != null) {
+            builder.messageRoutingMode(producerHolder.getMessageRoutingMode());
+        }
+        if (producerHolder.getMessageRouter() != null) {
+            builder.messageRouter(producerHolder.getMessageRouter());
+        }
+        boolean bytesSchema = schema.getSchemaInfo().getType() == SchemaType.BYTES;
+        CompressionType compressionType = producerHolder.getCompressionType() == null
+                ? globalProducerProperties.getCompressionType() : producerHolder.getCompressionType();
+        ProducerBuilder<?> compressedBuilder = null;
+        if (producerHolder.isAdaptiveCompression() && compressionType != CompressionType.NONE) {
+            if (bytesSchema) {
+                // 自适应压缩需要在发送前知道消息大小, 只支持由 codec 编码的 BYTES schema
+                compressedBuilder = builder.clone().compressionType(compressionType);
+                compressionType = CompressionType.NONE;
+            } else {
+                log.warn("topic 为 [{}] 的生产者使用 {} schema, 不支持自适应压缩, 将始终压缩", topicUrl,
+                        schema.getSchemaInfo().getType());
+            }
+        }
+        builder.compressionType(compressionType);
+        ProducerBuilder<?> chunkBuilder = null;
+        if (producerHolder.isEnableChunking()) {
+            if (!producerHolder.isEnableBatching()) {
+                builder.enableChunking(true);
+            } else if (bytesSchema) {
+                // 分块不能与批量同时开启, 大消息交给单独的分块 producer
+                chunkBuilder = builder.clone().enableBatching(false).enableChunking(true);
+            } else {
+                log.warn("topic 为 [{}] 的生产者使用 {} schema, 无法预知消息大小, 开启分块时关闭批量发送", topicUrl,
+                        schema.getSchemaInfo().getType());
+                builder.enableBatching(false).enableChunking(true);
+            }
+        }
+        Function<Producer<?>, EnvelopeBatcher> envelopeFactory = null;
+        if (producerHolder.isEnvelope()) {
+            if (bytesSchema) {
+                ScheduledExecutorService flusher = envelopeFlusher();
+                int maxMessages = producerHolder.getEnvelopeMaxMessages();
+                int maxBytes = producerHolder.getEnvelopeMaxBytes();
+                long lingerMillis = producerHolder.getEnvelopeLingerTime().toMillis();
+                envelopeFactory = producer -> new EnvelopeBatcher(producer, maxMessages, maxBytes, lingerMillis, flusher);
+            } else {
+                log.warn("topic 为 [{}] 的生产者使用 {} schema, 不支持信封模式", topicUrl, schema.getSchemaInfo().getType());
+            }
+        }
+        // 使用默认租户和命名空间时, 调用方通常直接传入短 topic
+        String shortTopic = !StringUtils.hasLength(tenant) && !StringUtils.hasLength(namespace) ? topic : null;
+        return new ProducerCreation(topicUrl, shortTopic, msgType, codec, bytesSchema, builder, compressedBuilder,
+                chunkBuilder, producerName, Math.max(1, producerHolder.getProducerCount()),
+                producerHolder.getCompressionThreshold(), producerHolder.getChunkingThreshold(), envelopeFactory);
+    }
+
+    private ScheduledExecutorService envelopeFlusher() {
+        ScheduledExecutorService flusher = envelopeFlusher;
+        if (flusher == null) {
+            synchronized (this) {
+                flusher = envelopeFlusher;
+                if (flusher == null) {
+                    flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "pulsar-envelope-flusher");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    envelopeFlusher = flusher;
                 }
-            }, "shutdown-producer"));
-            return producer;
-        } catch (PulsarClientException e) {
-            log.error("初始化 topic 为 [{}] 的生产者失败", topic);
-            throw new InitFailedException("初始化 topic 为 [" + topic + "] 的生产者失败", e);
+            }
+        }
+        return flusher;
+    }
+
+    /**
+     * 将创建完成的 producer 注册到路由表
+     *
+     * @param creation 创建完成的 producer
+     */
+    private void register(ProducerCreation creation) {
+        Producer<?>[] producers = creation.getFuture().join();
+        String topicUrl = creation.getTopicUrl();
+        log.debug("初始化 topic 为 [{}] 的生产者成功, 数量: {}", topicUrl, producers.length);
+        TopicRoute route = creation.toRoute(producers);
+        // 由 destroy 统一关闭, 依赖本类的本地延时发送和溢写重放先于关闭完成
+        createdRoutes.add(route);
+        // 多个 producer 时只映射第一个
+        producerMapping.put(topicUrl, producers[0]);
+        topicRoutes.put(topicUrl, route);
+        if (creation.getShortTopic() != null) {
+            topicRoutes.put(creation.getShortTopic(), route);
+        }
+        for (Producer<?> producer : producers) {
+            notifyAdded(topicUrl, producer);
+        }
+    }
+
+    /**
+     * 输出每个 producer 的创建耗时, 按耗时倒序
+     *
+     * @param creations    创建完成的 producer
+     * @param elapsedNanos 总耗时
+     */
+    private void report(List<ProducerCreation> creations, long elapsedNanos) {
+        List<ProducerCreation> sorted = new ArrayList<>(creations);
+        sorted.sort(Comparator.comparingLong(ProducerCreation::getCostNanos).reversed());
+        log.info("初始化 {} 个生产者完成, 总耗时 {} ms, 最慢的 topic: {}", creations.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                sorted.stream().limit(SLOW_REPORT_SIZE).map(this::costOf).collect(Collectors.joining(", ")));
+        if (log.isDebugEnabled()) {
+            sorted.forEach(creation -> log.debug("生产者创建耗时 {}", costOf(creation)));
+        }
+    }
+
+    private String costOf(ProducerCreation creation) {
+        return creation.getTopicUrl() + "=" + TimeUnit.NANOSECONDS.toMillis(creation.getCostNanos()) + "ms";
+    }
+
+    private void closeQuietly(List<ProducerCreation> creations) {
+        for (ProducerCreation creation : creations) {
+            creation.getFuture().thenAccept(ProducerCollector::closeAsync);
+        }
+    }
+
+    private static void flushEnvelope(TopicRoute route) {
+        if (route.getEnvelopeBatcher() != null) {
+            route.getEnvelopeBatcher().flush();
+        }
+    }
+
+    private static void closeAsync(Producer<?>[] producers) {
+        for (Producer<?> producer : producers) {
+            producer.closeAsync();
+        }
+    }
+
+    /**
+     * 注册 producer 创建和关闭的回调, 注册时先回调已存在的 producer
+     *
+     * @param listener 回调
+     */
+    public void addListener(ProducerListener listener) {
+        listeners.add(listener);
+        Set<Producer<?>> notified = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<TopicRoute> routes = new ArrayList<>(topicRoutes.values());
+        lazyRoutes.values().forEach(future -> {
+            TopicRoute route = createdRoute(future);
+            if (route != null) {
+                routes.add(route);
+            }
+        });
+        for (TopicRoute route : routes) {
+            for (Producer<?> producer : route.getAllProducers()) {
+                if (notified.add(producer)) {
+                    listener.producerAdded(route.getTopicUrl(), producer);
+                }
+            }
+        }
+    }
+
+    private void notifyAdded(String topicUrl, Producer<?> producer) {
+        for (ProducerListener listener : listeners) {
+            try {
+                listener.producerAdded(topicUrl, producer);
+            } catch (RuntimeException e) {
+                log.warn("producer:{} 的创建回调执行失败", producer.getProducerName(), e);
+            }
+        }
+    }
+
+    private void notifyRemoved(String topicUrl, Producer<?> producer) {
+        for (ProducerListener listener : listeners) {
+            try {
+                listener.producerRemoved(topicUrl, producer);
+            } catch (RuntimeException e) {
+                log.warn("producer:{} 的关闭回调执行失败", producer.getProducerName(), e);
+            }
         }
     }
 
@@ -152,4 +436,440 @@ public class ProducerCollector implements BeanPostProcessor, EmbeddedValueResolv
     public Optional<Producer> getProducer(String topic) {
         return Optional.ofNullable(producerMapping.get(topic));
     }
+
+    /**
+     * 根据调用方传入的 topic 获取路由, 启动时注册过的 topic 直接命中路由表,
+     * 其他写法只在第一次解析, 之后缓存; 按需创建的 producer 还在创建时阻塞等待
+     *
+     * @param topic 调用方传入的 topic
+     * @return 路由, 不存在时返回 null
+     * @throws NoSuchTopicException 按需创建 producer 失败
+     */
+    @Nullable
+    public TopicRoute route(String topic) {
+        CompletableFuture<TopicRoute> route = routeAsync(topic);
+        return route == null ? null : await(route);
+    }
+
+    /**
+     * 根据调用方传入的 topic 信息获取路由
+     *
+     * @param topicInfo 调用方传入的 topic 信息
+     * @return 路由, 不存在时返回 null
+     * @throws NoSuchTopicException 按需创建 producer 失败
+     */
+    @Nullable
+    public TopicRoute route(TopicInfo topicInfo) {
+        CompletableFuture<TopicRoute> route = routeAsync(topicInfo);
+        return route == null ? null : await(route);
+    }
+
+    /**
+     * 异步获取路由, 按需创建的 producer 还在创建时不阻塞, 创建失败时以 {@link NoSuchTopicException} 完成
+     *
+     * @param topic 调用方传入的 topic
+     * @return 路由, 不存在且没有开启按需创建时返回 null
+     */
+    @Nullable
+    public CompletableFuture<TopicRoute> routeAsync(String topic) {
+        TopicRoute route = topicRoutes.get(topic);
+        if (route != null && !route.isRetired()) {
+            route.touch();
+            return route.asFuture();
+        }
+        return resolve(topicRoutes, topic, route, topicBuilder.buildTopicUrl(topic));
+    }
+
+    /**
+     * 异步获取路由, 按需创建的 producer 还在创建时不阻塞, 创建失败时以 {@link NoSuchTopicException} 完成
+     *
+     * @param topicInfo 调用方传入的 topic 信息
+     * @return 路由, 不存在且没有开启按需创建时返回 null
+     */
+    @Nullable
+    public CompletableFuture<TopicRoute> routeAsync(TopicInfo topicInfo) {
+        if (topicInfo.isDefaultNamespace()) {
+            return routeAsync(topicInfo.getTopic());
+        }
+        TopicRoute route = topicInfoRoutes.get(topicInfo);
+        if (route != null && !route.isRetired()) {
+            route.touch();
+            return route.asFuture();
+        }
+        return resolve(topicInfoRoutes, topicInfo, route, topicBuilder.buildTopicUrl(topicInfo));
+    }
+
+    /**
+     * 路由表没有命中时解析路由, 结果以调用方传入的写法缓存, 之后不再拼接 topic 地址
+     *
+     * @param cache   路由缓存
+     * @param key     调用方传入的 topic 或 topic 信息
+     * @param retired 缓存中已被淘汰的路由, 没有时为 null
+     * @param topicUrl 完整的 topic 地址
+     * @return 路由, 不存在且没有开启按需创建时返回 null
+     */
+    @Nullable
+    private <K> CompletableFuture<TopicRoute> resolve(Map<K, TopicRoute> cache, K key, @Nullable TopicRoute retired,
+                                                      String topicUrl) {
+        if (retired != null) {
+            cache.remove(key, retired);
+        }
+        TopicRoute route = resolveRoute(topicUrl);
+        if (route != null) {
+            cache.putIfAbsent(key, route);
+            return route.asFuture();
+        }
+        if (!globalProducerProperties.isLazyCreate()) {
+            return null;
+        }
+        CompletableFuture<TopicRoute> future = lazyRoute(topicUrl);
+        route = createdRoute(future);
+        if (route != null) {
+            cache.putIfAbsent(key, route);
+        }
+        return future;
+    }
+
+    @Nullable
+    private TopicRoute resolveRoute(String topicUrl) {
+        TopicRoute route = topicRoutes.get(topicUrl);
+        if (route != null && !route.isRetired()) {
+            return route;
+        }
+        Producer<?> producer = producerMapping.get(topicUrl);
+        return producer == null ? null
+                : new TopicRoute(topicUrl, producer, byte[].class, codecRegistry.codec("", byte[].class), true);
+    }
+
+    /**
+     * 获取按需创建的路由, 同一个 topic 的并发首次发送只会创建一个 producer
+     * <p>
+     * 数量超过上限时交给淘汰线程关闭最久没有使用的, 上限是软限制, 正在创建和被长期持有的路由不会被淘汰
+     *
+     * @param topicUrl 完整的 topic 地址
+     * @return 创建完成时完成的路由
+     */
+    private CompletableFuture<TopicRoute> lazyRoute(String topicUrl) {
+        CompletableFuture<TopicRoute> future = lazyRoutes.get(topicUrl);
+        if (future == null) {
+            CompletableFuture<TopicRoute> created = new CompletableFuture<>();
+            future = lazyRoutes.putIfAbsent(topicUrl, created);
+            if (future == null) {
+                future = created;
+                createLazy(topicUrl, created);
+                if (lazyRoutes.size() > globalProducerProperties.getMaxLazyProducers()) {
+                    requestEviction();
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 以默认配置创建 producer, 不在 map 的计算函数中执行, 失败时可以直接从 map 中移除
+     */
+    private void createLazy(String topicUrl, CompletableFuture<TopicRoute> future) {
+        ProducerCreation creation;
+        try {
+            creation = prepare(ProducerHolder.builder(topicUrl).build());
+        } catch (RuntimeException e) {
+            lazyFailed(topicUrl, future, e);
+            return;
+        }
+        creation.start().whenComplete((producers, e) -> {
+            if (e != null) {
+                lazyFailed(topicUrl, future, e instanceof CompletionException ? e.getCause() : e);
+                return;
+            }
+            TopicRoute route = creation.toRoute(producers);
+            route.markLazy();
+            for (Producer<?> producer : producers) {
+                notifyAdded(topicUrl, producer);
+            }
+            future.complete(route);
+        });
+    }
+
+    /**
+     * 创建失败时移除, 下一次发送重新创建
+     */
+    private void lazyFailed(String topicUrl, CompletableFuture<TopicRoute> future, Throwable e) {
+        lazyRoutes.remove(topicUrl, future);
+        future.completeExceptionally(new NoSuchTopicException("failed to create producer for topic [" + topicUrl + "]", e));
+    }
+
+    /**
+     * @return 已经创建成功的路由, 还在创建或创建失败时返回 null
+     */
+    @Nullable
+    private static TopicRoute createdRoute(CompletableFuture<TopicRoute> future) {
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    private static TopicRoute await(CompletableFuture<TopicRoute> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NoSuchTopicException) {
+                throw (NoSuchTopicException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void requestEviction() {
+        ScheduledExecutorService evictor = this.evictor;
+        if (evictor == null) {
+            return;
+        }
+        try {
+            evictor.execute(this::evictOverCapacity);
+        } catch (RejectedExecutionException e) {
+            log.debug("淘汰线程已关闭, 忽略淘汰请求");
+        }
+    }
+
+    /**
+     * 关闭空闲时间超过 {@link GlobalProducerProperties#getLazyIdleTimeout()} 的按需创建的 producer
+     */
+    private void evictIdle() {
+        long idleNanos = globalProducerProperties.getLazyIdleTimeout().toNanos();
+        long now = System.nanoTime();
+        lazyRoutes.forEach((topicUrl, future) -> {
+            TopicRoute route = createdRoute(future);
+            if (route != null && now - route.getLastAccessNanos() > idleNanos) {
+                evict(topicUrl, future, route, false);
+            }
+        });
+    }
+
+    /**
+     * 数量超过上限时按最后使用时间一次性淘汰多出的部分, 只在淘汰线程上执行, 不占用发送线程
+     */
+    private void evictOverCapacity() {
+        int excess = lazyRoutes.size() - globalProducerProperties.getMaxLazyProducers();
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, CompletableFuture<TopicRoute>>> candidates = new ArrayList<>(lazyRoutes.size());
+        for (Map.Entry<String, CompletableFuture<TopicRoute>> entry : lazyRoutes.entrySet()) {
+            if (createdRoute(entry.getValue()) != null) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().join().getLastAccessNanos()));
+        for (Map.Entry<String, CompletableFuture<TopicRoute>> entry : candidates) {
+            if (excess <= 0) {
+                return;
+            }
+            if (evict(entry.getKey(), entry.getValue(), entry.getValue().join(), false)) {
+                excess--;
+            }
+        }
+        log.warn("按需创建的生产者数量超过上限 {}, 剩余的 {} 个正在创建或被长期持有",
+                globalProducerProperties.getMaxLazyProducers(), excess);
+    }
+
+    /**
+     * 没有长期持有者时标记为已淘汰并从缓存中移除, 延迟 {@link #EVICT_CLOSE_DELAY_MILLIS} 后关闭,
+     * 已经拿到路由的线程可以完成发送, closeAsync 会等待已经发出的消息完成
+     *
+     * @param force 关闭时不检查持有者, 立即关闭
+     * @return 是否淘汰
+     */
+    private boolean evict(String topicUrl, CompletableFuture<TopicRoute> future, TopicRoute route, boolean force) {
+        if (!route.retire() && !force) {
+            return false;
+        }
+        if (!lazyRoutes.remove(topicUrl, future)) {
+            return false;
+        }
+        topicRoutes.values().removeIf(cached -> cached == route);
+        topicInfoRoutes.values().removeIf(cached -> cached == route);
+        flushEnvelope(route);
+        for (Producer<?> producer : route.getAllProducers()) {
+            notifyRemoved(topicUrl, producer);
+        }
+        ScheduledExecutorService evictor = this.evictor;
+        if (force || evictor == null) {
+            closeAsync(route.getAllProducers());
+        } else {
+            evictor.schedule(() -> closeAsync(route.getAllProducers()), EVICT_CLOSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        log.debug("topic 为 [{}] 的按需生产者已淘汰", topicUrl);
+        return true;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (globalProducerProperties.isLazyCreate()) {
+            long period = Math.max(1000L, globalProducerProperties.getLazyIdleTimeout().toMillis() / 2);
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pulsar-producer-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 关闭全部 producer, 依赖本类的 bean (如 {@link com.sumwhy.pulsar.producer.DelayedSendTimer}) 此时已经关闭,
+     * 不再有新的发送
+     */
+    @Override
+    public void destroy() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        lazyRoutes.forEach((topicUrl, future) -> {
+            TopicRoute route = createdRoute(future);
+            if (route != null) {
+                evict(topicUrl, future, route, true);
+            } else {
+                // 还在创建的, 创建完成后直接关闭
+                future.thenAccept(created -> closeAsync(created.getAllProducers()));
+            }
+        });
+        for (TopicRoute route : createdRoutes) {
+            flushEnvelope(route);
+            for (Producer<?> producer : route.getAllProducers()) {
+                try {
+                    producer.close();
+                } catch (PulsarClientException e) {
+                    log.error("停止生产者失败,producer:{}", producer.getProducerName(), e);
+                }
+            }
+        }
+        if (envelopeFlusher != null) {
+            envelopeFlusher.shutdown();
+        }
+    }
+
+    /**
+     * 正在创建的 producer 及其路由信息
+     */
+    @Getter
+    private static class ProducerCreation {
+
+        private final String topicUrl;
+
+        @Nullable
+        private final String shortTopic;
+
+        private final Class<?> msgType;
+
+        private final MessageCodec codec;
+
+        private final boolean bytesSchema;
+
+        private final ProducerBuilder<?> builder;
+
+        /**
+         * 自适应压缩时开启压缩的 builder
+         */
+        @Nullable
+        private final ProducerBuilder<?> compressedBuilder;
+
+        /**
+         * 批量发送时另外创建的分块 builder
+         */
+        @Nullable
+        private final ProducerBuilder<?> chunkBuilder;
+
+        private final String producerName;
+
+        private final int producerCount;
+
+        private final int compressionThreshold;
+
+        private final int chunkingThreshold;
+
+        /**
+         * 开启信封模式时, 以第一个 producer 创建打包器
+         */
+        @Nullable
+        private final Function<Producer<?>, EnvelopeBatcher> envelopeFactory;
+
+        private CompletableFuture<Producer<?>[]> future;
+
+        private long costNanos;
+
+        ProducerCreation(String topicUrl, @Nullable String shortTopic, Class<?> msgType, MessageCodec codec,
+                         boolean bytesSchema, ProducerBuilder<?> builder, @Nullable ProducerBuilder<?> compressedBuilder,
+                         @Nullable ProducerBuilder<?> chunkBuilder, String producerName, int producerCount,
+                         int compressionThreshold, int chunkingThreshold,
+                         @Nullable Function<Producer<?>, EnvelopeBatcher> envelopeFactory) {
+            this.topicUrl = topicUrl;
+            this.shortTopic = shortTopic;
+            this.msgType = msgType;
+            this.codec = codec;
+            this.bytesSchema = bytesSchema;
+            this.builder = builder;
+            this.compressedBuilder = compressedBuilder;
+            this.producerName = producerName;
+            this.producerCount = producerCount;
+            this.compressionThreshold = compressionThreshold;
+            this.chunkBuilder = chunkBuilder;
+            this.chunkingThreshold = chunkingThreshold;
+            this.envelopeFactory = envelopeFactory;
+        }
+
+        CompletableFuture<Producer<?>[]> start() {
+            long begin = System.nanoTime();
+            List<CompletableFuture<? extends Producer<?>>> futures = new ArrayList<>(producerCount * 2);
+            create(builder, producerName, futures);
+            if (compressedBuilder != null) {
+                create(compressedBuilder, producerName + "-compressed", futures);
+            }
+            if (chunkBuilder != null) {
+                // 大消息不频繁, 分块 producer 只创建一个
+                futures.add(chunkBuilder.producerName(producerName + "-chunked").createAsync());
+            }
+            future = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .thenApply(v -> futures.stream().<Producer<?>>map(CompletableFuture::join)
+                            .toArray(Producer<?>[]::new))
+                    .whenComplete((producers, e) -> {
+                        costNanos = System.nanoTime() - begin;
+                        if (e != null) {
+                            log.error("初始化 topic 为 [{}] 的生产者失败", topicUrl, e);
+                            // 部分创建成功时关闭已创建的
+                            futures.forEach(created -> created.thenAccept(Producer::closeAsync));
+                        }
+                    });
+            return future;
+        }
+
+        private void create(ProducerBuilder<?> builder, String name,
+                            List<CompletableFuture<? extends Producer<?>>> futures) {
+            if (producerCount == 1) {
+                futures.add(builder.producerName(name).createAsync());
+                return;
+            }
+            // producer 名称在 topic 内必须唯一
+            for (int i = 0; i < producerCount; i++) {
+                futures.add(builder.clone().producerName(name + "-" + i).createAsync());
+            }
+        }
+
+        /**
+         * @param producers 创建完成的 producer, 依次为普通 producer, 自适应压缩时的压缩 producer, 分块 producer
+         * @return 路由
+         */
+        TopicRoute toRoute(Producer<?>[] producers) {
+            EnvelopeBatcher envelopeBatcher = envelopeFactory == null ? null : envelopeFactory.apply(producers[0]);
+            if (compressedBuilder == null && chunkBuilder == null && envelopeBatcher == null) {
+                return new TopicRoute(topicUrl, producers, msgType, codec, bytesSchema);
+            }
+            Producer<?>[] compressedProducers = null;
+            AdaptiveCompression adaptiveCompression = null;
+            if (compressedBuilder != null) {
+                compressedProducers = Arrays.copyOfRange(producers, producerCount, producerCount * 2);
+                adaptiveCompression = new AdaptiveCompression(compressionThreshold);
+            }
+            Producer<?> chunkProducer = chunkBuilder == null ? null : producers[producers.length - 1];
+            return new TopicRoute(topicUrl, Arrays.copyOf(producers, producerCount), msgType, codec, bytesSchema,
+                    compressedProducers, adaptiveCompression, chunkProducer, chunkingThreshold, envelopeBatcher);
+        }
+    }
 }
@@ -0,0 +1,250 @@
+package com.sumwhy.pulsar.producer.spill;
+
+import com.sumwhy.pulsar.properties.SpillProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p> @date: 2026-10-18 21:15</p>
+ * <p> 一个 topic 的溢写日志, 由多个分段文件组成, 保存在以 topic 地址命名的子目录中, 每个 topic 有自己的读取位置,
+ * 一个 topic 无法重放时不影响其他 topic </p>
+ * <p> 读取位置只在一批消息全部确认后推进, 推进前进程退出会导致这一批消息重复发送 </p>
+ * <p> 全部重放后删除分段文件和目录, 分段数量在所有 topic 之间共用 {@link SpillProperties#getMaxSize()} 的上限 </p>
+ *
+ * @author 何嘉豪
+ */
+class SpillLog {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("spill-(\\d{20})\\.log");
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /**
+     * 所有 topic 现有的分段数量
+     */
+    private final AtomicInteger segmentCount;
+
+    private final boolean forceEveryWrite;
+
+    /**
+     * 从旧到新的分段, 由 this 保护
+     */
+    private final Deque<SpillSegment> segments = new ArrayDeque<>();
+
+    /**
+     * 尚未重放的消息数量, 有未重放的消息时新消息也必须溢写, 否则会越过旧消息
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * 下一个分段的序号, 由 this 保护
+     */
+    private long nextSequence;
+
+    SpillLog(File directory, SpillProperties properties, AtomicInteger segmentCount) throws IOException {
+        this.directory = directory;
+        this.segmentSize = properties.getSegmentSize();
+        this.maxSegments = (int) Math.max(1L, properties.getMaxSize() / segmentSize);
+        this.segmentCount = segmentCount;
+        this.forceEveryWrite = properties.getFsyncPolicy() == SpillProperties.FsyncPolicy.EVERY_WRITE;
+        recover();
+    }
+
+    /**
+     * @param topicUrl 完整的 topic 地址
+     * @return 子目录名
+     */
+    static String directoryName(String topicUrl) {
+        try {
+            return URLEncoder.encode(topicUrl, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param directoryName {@link #directoryName(String)} 生成的子目录名
+     * @return 完整的 topic 地址
+     */
+    static String topicUrl(String directoryName) {
+        try {
+            return URLDecoder.decode(directoryName, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> SEGMENT_NAME.matcher(name).matches());
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                long sequence = Long.parseLong(matcher.group(1));
+                nextSequence = sequence + 1;
+                SpillSegment segment = SpillSegment.open(file, sequence, segmentSize);
+                if (segment.isFullyRead()) {
+                    segment.delete();
+                } else {
+                    segments.addLast(segment);
+                }
+            }
+        }
+        segmentCount.addAndGet(segments.size());
+        for (SpillSegment segment : segments) {
+            int position = segment.getReadPosition();
+            while (segment.read(position) != null) {
+                pending.incrementAndGet();
+                position = segment.next(position);
+            }
+        }
+        if (segments.isEmpty()) {
+            deleteDirectory();
+        }
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @param record 消息
+     * @return 超过总大小上限或单条消息超过分段大小时返回 false
+     * @throws IOException 创建分段文件失败
+     */
+    synchronized boolean append(SpillRecord record) throws IOException {
+        byte[] body = record.encode();
+        if (SpillSegment.HEADER_SIZE + SpillSegment.RECORD_HEADER_SIZE + body.length > segmentSize) {
+            return false;
+        }
+        SpillSegment tail = segments.peekLast();
+        if (tail == null || !tail.append(body)) {
+            if (segmentCount.incrementAndGet() > maxSegments) {
+                segmentCount.decrementAndGet();
+                return false;
+            }
+            try {
+                tail = createSegment();
+            } catch (IOException e) {
+                segmentCount.decrementAndGet();
+                throw e;
+            }
+            segments.addLast(tail);
+            tail.append(body);
+        }
+        if (forceEveryWrite) {
+            tail.force();
+        }
+        pending.incrementAndGet();
+        return true;
+    }
+
+    private SpillSegment createSegment() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create spill directory " + directory);
+        }
+        return SpillSegment.create(directory, nextSequence++, segmentSize);
+    }
+
+    /**
+     * @return 是否有尚未重放的消息
+     */
+    boolean hasPending() {
+        return pending.get() > 0;
+    }
+
+    /**
+     * @return 尚未重放的消息数量
+     */
+    long pending() {
+        return pending.get();
+    }
+
+    /**
+     * 从读取位置开始读取消息, 不推进读取位置
+     *
+     * @param max 最多读取的数量
+     * @return 消息, 没有时返回空集合
+     */
+    synchronized List<SpillRecord> peek(int max) {
+        List<SpillRecord> records = new ArrayList<>();
+        for (SpillSegment segment : segments) {
+            int position = segment.getReadPosition();
+            ByteBuffer body;
+            while (records.size() < max && (body = segment.read(position)) != null) {
+                records.add(SpillRecord.decode(body));
+                position = segment.next(position);
+            }
+            if (records.size() >= max) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 推进读取位置, 删除已全部重放的分段, 没有剩余分段时删除目录
+     *
+     * @param records 已确认的消息, 必须是上一次 {@link #peek(int)} 的结果
+     */
+    synchronized void advance(List<SpillRecord> records) {
+        int remaining = records.size();
+        while (remaining > 0 && !segments.isEmpty()) {
+            SpillSegment head = segments.getFirst();
+            int position = head.getReadPosition();
+            while (remaining > 0 && head.read(position) != null) {
+                position = head.next(position);
+                remaining--;
+            }
+            head.commitRead(position);
+            if (forceEveryWrite) {
+                head.force();
+            }
+            if (head.isFullyRead()) {
+                segments.removeFirst().delete();
+                segmentCount.decrementAndGet();
+            } else if (remaining > 0) {
+                break;
+            }
+        }
+        pending.addAndGet(-records.size());
+        if (segments.isEmpty()) {
+            deleteDirectory();
+        }
+    }
+
+    synchronized void force() {
+        segments.forEach(SpillSegment::force);
+    }
+
+    /**
+     * 目录中还有其他文件时不删除
+     */
+    private void deleteDirectory() {
+        if (directory.isDirectory() && !directory.delete()) {
+            directory.deleteOnExit();
+        }
+    }
+
+}
@@ -0,0 +1,401 @@
+package com.sumwhy.pulsar.producer.spill;
+
+import com.sumwhy.pulsar.exception.InitFailedException;
+import com.sumwhy.pulsar.producer.TopicRoute;
+import com.sumwhy.pulsar.producer.collector.ProducerCollector;
+import com.sumwhy.pulsar.properties.SpillProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> @date: 2026-10-18 21:25</p>
+ * <p> 本地溢写, producer 断连, 队列满或发送超时时把消息写入本地磁盘, 由后台线程在 producer 恢复后重放 </p>
+ * <p> 每个 topic 有独立的溢写日志和读取位置, 按 topic 并行重放, 一个 topic 的 producer 断连只推迟该 topic 的重放;
+ * 重放时遇到无法恢复的异常 (比如消息超过大小限制) 时记录并丢弃该消息, 不会一直阻塞该 topic </p>
+ * <p> 溢写不保证与直接发送的消息之间的顺序: 异步发送超时后才溢写的消息会排在之后已经发送成功的消息后面;
+ * 只保证同一个 topic 溢写的消息按写入顺序重放, 且存在未重放的消息时该 topic 的新消息同样先溢写, 不会越过它们 </p>
+ * <p> 溢写的消息至少投递一次: 一批消息全部确认后才推进读取位置, 中途失败或进程退出时整批重发 </p>
+ * <p> 只对 BYTES schema 的 producer 生效, 其他 schema 的消息无法脱离 producer 保存;
+ * 只有 {@link com.sumwhy.pulsar.PulsarTemplate} 的 send, sendAsync, sendAndForget 和 batchSend 会溢写,
+ * 发送句柄, 流式发送和延时消息直接发送, 失败时返回原异常 </p>
+ *
+ * @author 何嘉豪
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pulsar.producer.spill.enabled", havingValue = "true")
+public class SpillManager implements InitializingBean, DisposableBean {
+
+    private final ProducerCollector producerCollector;
+
+    private final SpillProperties spillProperties;
+
+    /**
+     * topic 地址和它的溢写日志
+     */
+    private final ConcurrentMap<String, SpillLog> spillLogs = new ConcurrentHashMap<>();
+
+    /**
+     * 所有 topic 现有的分段数量
+     */
+    private final AtomicInteger segmentCount = new AtomicInteger();
+
+    private File directory;
+
+    private ScheduledExecutorService fsyncScheduler;
+
+    private Thread replayer;
+
+    private volatile boolean running;
+
+    public SpillManager(ProducerCollector producerCollector, SpillProperties spillProperties) {
+        this.producerCollector = producerCollector;
+        this.spillProperties = spillProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        directory = new File(spillProperties.getDirectory());
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new InitFailedException("failed to open spill directory " + spillProperties.getDirectory(), e);
+        }
+        running = true;
+        replayer = new Thread(this::replay, "pulsar-spill-replayer");
+        replayer.setDaemon(true);
+        replayer.start();
+        if (spillProperties.getFsyncPolicy() == SpillProperties.FsyncPolicy.INTERVAL) {
+            long interval = Math.max(1L, spillProperties.getFsyncInterval().toMillis());
+            fsyncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pulsar-spill-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fsyncScheduler.scheduleWithFixedDelay(this::force, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 打开上次留下的每个 topic 的溢写日志
+     */
+    private void recover() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create spill directory " + directory);
+        }
+        File[] topicDirectories = directory.listFiles(File::isDirectory);
+        if (topicDirectories == null) {
+            return;
+        }
+        for (File topicDirectory : topicDirectories) {
+            String topicUrl = SpillLog.topicUrl(topicDirectory.getName());
+            SpillLog spillLog = new SpillLog(topicDirectory, spillProperties, segmentCount);
+            if (spillLog.hasPending()) {
+                spillLogs.put(topicUrl, spillLog);
+                log.info("发现上次未重放的溢写消息, topic:{}, 数量:{}", topicUrl, spillLog.pending());
+            }
+        }
+    }
+
+    /**
+     * @param route 路由
+     * @return 该路由的消息是否可以溢写
+     */
+    public boolean accepts(TopicRoute route) {
+        return route.isBytesSchema();
+    }
+
+    /**
+     * 发送消息, 需要溢写时写入本地后直接返回
+     *
+     * @param route 路由, 必须是 BYTES schema
+     * @param key   消息的 key
+     * @param msg   消息
+     * @return messageId, 消息被溢写时返回 null
+     * @throws PulsarClientException 发送失败且无法溢写
+     */
+    public MessageId send(TopicRoute route, @Nullable String key, Object msg) throws PulsarClientException {
+        byte[] payload = route.toBytes(msg);
+        Producer<?> producer = route.selectProducer(payload, key);
+        if (shouldSpill(route, producer) && spill(route, key, payload)) {
+            return null;
+        }
+        try {
+            return newMessage(producer, key, payload).send();
+        } catch (PulsarClientException e) {
+            if (isRecoverable(e) && spill(route, key, payload)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 异步发送消息, 需要溢写时写入本地后以 null 完成
+     *
+     * @param route 路由, 必须是 BYTES schema
+     * @param key   消息的 key
+     * @param msg   消息
+     * @return messageId, 消息被溢写时为 null
+     */
+    public CompletableFuture<MessageId> sendAsync(TopicRoute route, @Nullable String key, Object msg) {
+        byte[] payload = route.toBytes(msg);
+        Producer<?> producer = route.selectProducer(payload, key);
+        if (shouldSpill(route, producer) && spill(route, key, payload)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<MessageId> future = new CompletableFuture<>();
+        newMessage(producer, key, payload).sendAsync().whenComplete((messageId, e) -> {
+            if (e == null) {
+                future.complete(messageId);
+            } else if (isRecoverable(e) && spill(route, key, payload)) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private boolean shouldSpill(TopicRoute route, Producer<?> producer) {
+        SpillLog spillLog = spillLogs.get(route.getTopicUrl());
+        return spillLog != null && spillLog.hasPending() || !producer.isConnected();
+    }
+
+    private boolean spill(TopicRoute route, @Nullable String key, byte[] payload) {
+        try {
+            if (spillLog(route.getTopicUrl()).append(new SpillRecord(route.getTopicUrl(), key, payload))) {
+                return true;
+            }
+            log.warn("溢写文件已满, topic:{} 的消息直接返回失败", route.getTopicUrl());
+        } catch (IOException | UncheckedIOException e) {
+            log.error("topic:{} 的消息溢写失败", route.getTopicUrl(), e);
+        }
+        return false;
+    }
+
+    private SpillLog spillLog(String topicUrl) {
+        return spillLogs.computeIfAbsent(topicUrl, key -> {
+            try {
+                return new SpillLog(new File(directory, SpillLog.directoryName(key)), spillProperties, segmentCount);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 只有等待后可能恢复的异常才溢写, 其他异常重放也不会成功
+     */
+    private static boolean isRecoverable(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof PulsarClientException.ProducerQueueIsFullError
+                || cause instanceof PulsarClientException.TimeoutException
+                || cause instanceof PulsarClientException.NotConnectedException
+                || cause instanceof PulsarClientException.ProducerBlockedQuotaExceededError
+                || cause instanceof PulsarClientException.ProducerBlockedQuotaExceededException;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypedMessageBuilder<byte[]> newMessage(Producer<?> producer, @Nullable String key, byte[] payload) {
+        TypedMessageBuilder<byte[]> builder = ((Producer<byte[]>) producer).newMessage().value(payload);
+        return key == null ? builder : builder.key(key);
+    }
+
+    private void replay() {
+        long interval = Math.max(1L, spillProperties.getReplayInterval().toMillis());
+        while (running) {
+            boolean replayed;
+            try {
+                replayed = replayAll();
+            } catch (RuntimeException e) {
+                log.error("溢写消息重放异常, 稍后重试", e);
+                replayed = false;
+            }
+            try {
+                if (!replayed) {
+                    TimeUnit.MILLISECONDS.sleep(interval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 所有 topic 同时发送一批, 再逐个等待确认, 一轮中单个 topic 最多拖慢其他 topic 一个发送超时
+     *
+     * @return 是否有 topic 推进了读取位置
+     */
+    private boolean replayAll() {
+        List<Replay> replays = new ArrayList<>();
+        spillLogs.forEach((topicUrl, spillLog) -> {
+            if (!spillLog.hasPending()) {
+                return;
+            }
+            try {
+                Replay replay = replay(topicUrl, spillLog);
+                if (replay != null) {
+                    replays.add(replay);
+                }
+            } catch (RuntimeException e) {
+                log.error("topic:{} 溢写消息重放异常, 稍后重试", topicUrl, e);
+            }
+        });
+        boolean replayed = false;
+        for (Replay replay : replays) {
+            replayed |= replay.finish();
+        }
+        return replayed;
+    }
+
+    /**
+     * 按顺序异步发送一个 topic 的一批消息
+     *
+     * @return 正在进行的重放, producer 不可用时返回 null
+     */
+    @Nullable
+    private Replay replay(String topicUrl, SpillLog spillLog) {
+        List<SpillRecord> records = spillLog.peek(spillProperties.getReplayBatchSize());
+        if (records.isEmpty()) {
+            return null;
+        }
+        TopicRoute route;
+        try {
+            route = producerCollector.route(topicUrl);
+        } catch (RuntimeException e) {
+            log.warn("topic:{} 的 producer 不可用, 稍后重放溢写的消息, 原因:{}", topicUrl, e.getMessage());
+            return null;
+        }
+        if (route == null) {
+            // producer 已不存在, 继续保留也无法重放
+            log.error("topic:{} 没有对应的 producer, 丢弃 {} 条溢写的消息", topicUrl, records.size());
+            return new Replay(spillLog, records, null, CompletableFuture.completedFuture(true));
+        }
+        if (!route.retain()) {
+            // 正在被淘汰, 下一轮重新查找
+            return null;
+        }
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(records.size());
+        try {
+            for (SpillRecord record : records) {
+                Producer<?> producer = route.selectProducer(record.getPayload(), record.getKey());
+                if (!producer.isConnected()) {
+                    // 已发出的消息在下一轮会重复发送
+                    results.add(CompletableFuture.completedFuture(false));
+                    break;
+                }
+                results.add(replay(producer, record));
+            }
+        } catch (RuntimeException e) {
+            route.release();
+            throw e;
+        }
+        CompletableFuture<Boolean> result = CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(v -> results.stream().allMatch(CompletableFuture::join));
+        return new Replay(spillLog, records, route, result);
+    }
+
+    /**
+     * @return 发送成功或者因无法恢复的异常丢弃时为 true, 需要重试时为 false
+     */
+    private static CompletableFuture<Boolean> replay(Producer<?> producer, SpillRecord record) {
+        return newMessage(producer, record.getKey(), record.getPayload()).sendAsync().handle((messageId, e) -> {
+            if (e == null) {
+                return true;
+            }
+            if (isRecoverable(e)) {
+                return false;
+            }
+            log.error("topic:{} 溢写的消息重放失败且无法恢复, 丢弃该消息", record.getTopicUrl(), e);
+            return true;
+        });
+    }
+
+    private void force() {
+        spillLogs.values().forEach(SpillLog::force);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (replayer != null) {
+            replayer.interrupt();
+        }
+        if (fsyncScheduler != null) {
+            fsyncScheduler.shutdownNow();
+        }
+        force();
+    }
+
+    /**
+     * 一个 topic 正在进行的一批重放, 由重放线程等待结果并推进读取位置
+     */
+    private static class Replay {
+
+        private final SpillLog spillLog;
+
+        private final List<SpillRecord> records;
+
+        /**
+         * 发送期间持有的路由, producer 不存在时为 null
+         */
+        @Nullable
+        private final TopicRoute route;
+
+        private final CompletableFuture<Boolean> result;
+
+        Replay(SpillLog spillLog, List<SpillRecord> records, @Nullable TopicRoute route,
+               CompletableFuture<Boolean> result) {
+            this.spillLog = spillLog;
+            this.records = records;
+            this.route = route;
+            this.result = result;
+        }
+
+        /**
+         * @return 是否推进了读取位置
+         */
+        boolean finish() {
+            boolean replayed;
+            try {
+                replayed = result.join();
+            } finally {
+                if (route != null) {
+                    route.release();
+                }
+            }
+            if (!replayed) {
+                log.warn("topic:{} 的溢写消息重放失败, 稍后重试", records.get(0).getTopicUrl());
+                return false;
+            }
+            spillLog.advance(records);
+            log.info("topic:{} 已重放 {} 条溢写消息", records.get(0).getTopicUrl(), records.size());
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.sumwhy.pulsar.producer.spill;
+
+import lombok.Getter;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p> @date: 2026-10-18 21:05</p>
+ * <p> 溢写的一条消息, 编码为 [topic 长度][topic][key 长度, -1 表示没有 key][key][消息体] </p>
+ *
+ * @author 何嘉豪
+ */
+@Getter
+public class SpillRecord {
+
+    private final String topicUrl;
+
+    @Nullable
+    private final String key;
+
+    private final byte[] payload;
+
+    public SpillRecord(String topicUrl, @Nullable String key, byte[] payload) {
+        this.topicUrl = topicUrl;
+        this.key = key;
+        this.payload = payload;
+    }
+
+    byte[] encode() {
+        byte[] topic = topicUrl.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + topic.length + 4 + (keyBytes == null ? 0 : keyBytes.length)
+                + payload.length);
+        buffer.putInt(topic.length).put(topic);
+        if (keyBytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(keyBytes.length).put(keyBytes);
+        }
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    static SpillRecord decode(ByteBuffer body) {
+        byte[] topic = new byte[body.getInt()];
+        body.get(topic);
+        int keyLength = body.getInt();
+        String key = null;
+        if (keyLength >= 0) {
+            byte[] keyBytes = new byte[keyLength];
+            body.get(keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+        }
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new SpillRecord(new String(topic, StandardCharsets.UTF_8), key, payload);
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.sumwhy.pulsar.producer.spill;
+
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <p> @date: 2026-10-18 21:10</p>
+ * <p> 一个内存映射的分段文件, 文件头为 [magic][保留][已重放位置], 之后为 [长度][crc][内容] 格式的记录 </p>
+ * <p> 写入时先写内容和 crc, 最后写长度, 长度为 0 表示数据结束, 掉电导致的半条记录由 crc 识别并丢弃 </p>
+ *
+ * @author 何嘉豪
+ */
+class SpillSegment {
+
+    private static final int MAGIC = 0x50534C47;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int READ_POSITION_OFFSET = 8;
+
+    private final long sequence;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    private int writePosition;
+
+    private int readPosition;
+
+    private SpillSegment(long sequence, File file, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    static SpillSegment create(File directory, long sequence, int size) throws IOException {
+        File file = new File(directory, fileName(sequence));
+        SpillSegment segment = new SpillSegment(sequence, file, map(file, size));
+        segment.buffer.putInt(0, MAGIC);
+        segment.writePosition = HEADER_SIZE;
+        segment.commitRead(HEADER_SIZE);
+        return segment;
+    }
+
+    /**
+     * 打开已有的分段文件, 扫描记录恢复写入位置
+     */
+    static SpillSegment open(File file, long sequence, int size) throws IOException {
+        SpillSegment segment = new SpillSegment(sequence, file, map(file, size));
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("invalid spill segment " + file);
+        }
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()
+                    || crc(buffer, position + RECORD_HEADER_SIZE, length) != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        segment.writePosition = position;
+        long readPosition = buffer.getLong(READ_POSITION_OFFSET);
+        segment.readPosition = (int) Math.max(HEADER_SIZE, Math.min(readPosition, position));
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            // 映射在 channel 关闭后仍然有效
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static String fileName(long sequence) {
+        return String.format("spill-%020d.log", sequence);
+    }
+
+    /**
+     * @param body 记录内容
+     * @return 剩余空间不足时返回 false
+     */
+    boolean append(byte[] body) {
+        if (writePosition + RECORD_HEADER_SIZE + body.length > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition + RECORD_HEADER_SIZE);
+        target.put(body);
+        buffer.putInt(writePosition + 4, crc(buffer, writePosition + RECORD_HEADER_SIZE, body.length));
+        buffer.putInt(writePosition, body.length);
+        writePosition += RECORD_HEADER_SIZE + body.length;
+        return true;
+    }
+
+    /**
+     * @param position 记录的起始位置
+     * @return 记录内容, 没有更多记录时返回 null
+     */
+    @Nullable
+    ByteBuffer read(int position) {
+        if (position >= writePosition) {
+            return null;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(position + RECORD_HEADER_SIZE);
+        body.limit(position + RECORD_HEADER_SIZE + buffer.getInt(position));
+        return body.slice();
+    }
+
+    int next(int position) {
+        return position + RECORD_HEADER_SIZE + buffer.getInt(position);
+    }
+
+    void commitRead(int position) {
+        readPosition = position;
+        buffer.putLong(READ_POSITION_OFFSET, position);
+    }
+
+    int getReadPosition() {
+        return readPosition;
+    }
+
+    boolean isFullyRead() {
+        return readPosition >= writePosition;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * 映射由 GC 释放, linux 下删除已映射的文件不受影响
+     */
+    void delete() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static int crc(ByteBuffer buffer, int position, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        slice.limit(position + length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(slice);
+        return (int) crc32.getValue();
+    }
+
+}
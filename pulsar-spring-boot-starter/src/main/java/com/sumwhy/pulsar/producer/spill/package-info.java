@@ -0,0 +1,12 @@
+/**
+ * <p> @date: 2026-10-18 21:00</p>
+ * <p> producer 不可用时的本地溢写 </p>
+ *
+ * @author 何嘉豪
+ */
+@NonNullApi
+@NonNullFields
+package com.sumwhy.pulsar.producer.spill;
+
+import org.springframework.lang.NonNullApi;
+import org.springframework.lang.NonNullFields;
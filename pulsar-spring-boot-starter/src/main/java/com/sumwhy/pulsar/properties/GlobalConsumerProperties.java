@@ -19,5 +19,29 @@ public class GlobalConsumerProperties {
      */
     private Duration ackTimeout = Duration.ZERO;
 
+    /**
+     * 启动时并行订阅的最大并发数
+     */
+    private int subscribeConcurrency = 16;
+
+    /**
+     * 订阅所有消费者的总超时时间
+     */
+    private Duration subscribeTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 是否在后台订阅, 开启后容器启动不再等待订阅完成, 订阅进度由 pulsarConsumers 健康检查报告
+     */
+    private boolean subscribeInBackground;
+
+    /**
+     * 关闭时等待批量消费的当前一批消息, 或按 key 分道消费中已分配的消息处理完成的最长时间
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    /**
+     * 按 key 分道消费时, 消息失败后重新投递未确认消息的延时
+     */
+    private Duration laneRedeliveryDelay = Duration.ofSeconds(1);
 
 }
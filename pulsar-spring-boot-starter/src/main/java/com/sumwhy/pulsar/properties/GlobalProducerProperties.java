@@ -0,0 +1,73 @@
+package com.sumwhy.pulsar.properties;
+
+import lombok.Data;
+import org.apache.pulsar.client.api.CompressionType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * <p> @date: 2026-10-18 16:20</p>
+ *
+ * @author 何嘉豪
+ */
+@Data
+@ConfigurationProperties(prefix = "pulsar.producer.default")
+public class GlobalProducerProperties {
+
+    /**
+     * 启动时并行创建生产者的最大并发数
+     */
+    private int createConcurrency = 16;
+
+    /**
+     * 启动时创建所有生产者的总超时时间
+     */
+    private Duration createTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 是否为没有注册的 topic 在第一次发送时按需创建 producer, 按需创建的 producer 使用默认配置
+     */
+    private boolean lazyCreate;
+
+    /**
+     * 按需创建的 producer 的最大数量, 超出时关闭最久没有使用的, 正在创建和被句柄等长期持有的不计入淘汰, 可能短暂超出
+     */
+    private int maxLazyProducers = 1000;
+
+    /**
+     * 按需创建的 producer 空闲多久后关闭, 被句柄, 流式发送或本地延时发送持有时不关闭
+     */
+    private Duration lazyIdleTimeout = Duration.ofMinutes(10);
+
+    /**
+     * 流式批量发送时同时在途的最大消息数量, 应不大于 producer 的 maxPendingMessages
+     */
+    private int maxInFlight = 1000;
+
+    /**
+     * 默认的压缩方式, 可选 NONE, LZ4, ZLIB, ZSTD, SNAPPY, producer 单独配置时以 producer 为准
+     */
+    private CompressionType compressionType = CompressionType.NONE;
+
+    /**
+     * 异步延时发送时, 延时小于该值的消息在本地时间轮中等待到期后发送, 不占用 broker 的延时投递索引, 为 0 时关闭
+     */
+    private Duration localDelayThreshold = Duration.ZERO;
+
+    /**
+     * 本地时间轮的精度
+     */
+    private Duration wheelTick = Duration.ofMillis(10);
+
+    /**
+     * 本地时间轮每一层的格子数
+     */
+    private int wheelSize = 64;
+
+    /**
+     * 是否以 micrometer timer 记录 PulsarTemplate 观察到的每个 topic 的发送耗时, 每次异步发送会多分配一个回调和 future
+     */
+    private boolean sendLatencyMetrics;
+
+}
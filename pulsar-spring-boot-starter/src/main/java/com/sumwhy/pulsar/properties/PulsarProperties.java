@@ -105,6 +105,13 @@ public class PulsarProperties {
      */
     private Duration maxBackoffInterval = Duration.ofSeconds(60);
 
+    /**
+     * producer 和 consumer 统计的汇总间隔, 默认 60s, 设置为 0 时不统计
+     * <p>
+     * 指标 pulsar.producer.* 读取的是最近一个间隔的统计, 间隔越短越接近实时, 统计日志也越频繁
+     */
+    private Duration statsInterval = Duration.ofSeconds(60);
+
     /**
      * 命名空间
      */
@@ -0,0 +1,80 @@
+package com.sumwhy.pulsar.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * <p> @date: 2026-10-18 21:00</p>
+ * <p> 本地溢写配置, 开启后 producer 断连或队列满时消息先写入本地磁盘, 恢复后按 topic 重放 </p>
+ *
+ * @author 何嘉豪
+ */
+@Data
+@ConfigurationProperties(prefix = "pulsar.producer.spill")
+public class SpillProperties {
+
+    /**
+     * 是否开启本地溢写, 只对 BYTES schema 的 producer 生效
+     */
+    private boolean enabled;
+
+    /**
+     * 溢写文件所在目录
+     */
+    private String directory = System.getProperty("java.io.tmpdir") + "/pulsar-spill";
+
+    /**
+     * 单个分段文件的大小, 单条消息不能超过该大小; 每个 topic 有单独的分段文件,
+     * 同时溢写的 topic 数量不超过 maxSize / segmentSize
+     */
+    private int segmentSize = 64 << 20;
+
+    /**
+     * 溢写文件的总大小上限, 超过后不再溢写, 发送失败直接抛出原异常
+     */
+    private long maxSize = 1L << 30;
+
+    /**
+     * 刷盘策略
+     */
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+
+    /**
+     * 按间隔刷盘时的间隔
+     */
+    private Duration fsyncInterval = Duration.ofSeconds(1);
+
+    /**
+     * producer 不可用时重试重放的间隔
+     */
+    private Duration replayInterval = Duration.ofSeconds(1);
+
+    /**
+     * 每次重放的最大消息数, 全部确认后才推进读取位置
+     */
+    private int replayBatchSize = 1000;
+
+    /**
+     * 刷盘策略
+     */
+    public enum FsyncPolicy {
+
+        /**
+         * 每次写入后刷盘, 最安全, 吞吐最低
+         */
+        EVERY_WRITE,
+
+        /**
+         * 按 fsyncInterval 定时刷盘, 进程崩溃不丢数据, 机器掉电最多丢失一个间隔的数据
+         */
+        INTERVAL,
+
+        /**
+         * 由操作系统决定何时刷盘
+         */
+        NEVER
+    }
+
+}
@@ -6,15 +6,24 @@ import org.apache.pulsar.client.api.Schema;
  * <p> @date: 2021-04-07 16:37</p>
  *
  * @author 何嘉豪
+ * @deprecated 使用 {@link com.sumwhy.pulsar.codec.MessageCodecRegistry#schema(String, Class)}
  */
+@Deprecated
 public class SchemaUtil {
 
+    private static final ClassValue<Schema<?>> JSON_SCHEMAS = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return Schema.JSON(type);
+        }
+    };
+
     public static Schema<?> schema(Class<?> clazz) {
         Schema<?> schema;
         if (clazz == null || clazz.equals(byte[].class)) {
             schema = Schema.BYTES;
         } else {
-            schema = Schema.JSON(clazz);
+            schema = JSON_SCHEMAS.get(clazz);
         }
         return schema;
     }
@@ -7,6 +7,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.util.StringValueResolver;
 
+import java.util.regex.Pattern;
+
 /**
  * <p> @date: 2021-04-15 14:50</p>
  *
@@ -18,6 +20,7 @@ public class TopicBuilder implements EmbeddedValueResolverAware {
     public static final String DEAD_QUEUE_SUFFIX = "-dlq";
     public static final String RETRY_QUEUE_SUFFIX = "-retry";
     private static final String DEFAULT_PERSISTENCE = "persistent";
+    private static final Pattern STANDARD_TOPIC_PATTERN = Pattern.compile("\\S+/\\S+/\\S+");
     private final PulsarProperties pulsarProperties;
     private StringValueResolver stringValueResolver;
 
@@ -33,7 +36,7 @@ public class TopicBuilder implements EmbeddedValueResolverAware {
     }
 
     private boolean checkTopicIfStandard(String topic) {
-        return topic.contains(DEFAULT_PERSISTENCE + "//") || topic.matches("\\S+/\\S+/\\S+");
+        return topic.contains(DEFAULT_PERSISTENCE + "//") || STANDARD_TOPIC_PATTERN.matcher(topic).matches();
     }
 
     public String buildTopicUrl(String tenant, String namespace, String topic) {
@@ -58,7 +58,7 @@ public class PulsarConfig {
                         .build())
                 .addProducer("delay-after-topic")
                 .addProducer("delay-at-topic")
-                .addProducer("user-topic");
+                .addProducer("user-topic", User.class);
     }
 
 
@@ -74,8 +74,8 @@ public class PulsarConfig {
         log.info("user: {},date: {}", user, LocalDateTime.now());
     }
 
-    @PulsarConsumer(topic = "user-topic")
-    public void userTopicConsumer(User user, Consumer<?> consumer, Message<byte[]> message) throws Exception {
+    @PulsarConsumer(topic = "user-topic", msgType = User.class)
+    public void userTopicConsumer(User user, Consumer<?> consumer, Message<User> message) throws Exception {
         log.info("consumer: {}", consumer);
         log.info("message: {}", message);
         log.info("user: {},date: {}", user, LocalDateTime.now());
@@ -0,0 +1,100 @@
+package com.sumwhy.pulsar.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumwhy.pulsar.codec.JacksonMessageCodec;
+import com.sumwhy.pulsar.model.User;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.apache.pulsar.shade.io.netty.buffer.ByteBuf;
+import org.apache.pulsar.shade.io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 18:50</p>
+ * <p> 使用 producer 实际使用的压缩实现, 对比不同压缩方式在 json 消息上的压缩和解压耗时 </p>
+ * <p> 压缩率在 setup 时输出, 与耗时对照即可得到 CPU 和网络字节数的取舍 </p>
+ *
+ * @author 何嘉豪
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"NONE", "LZ4", "ZLIB", "ZSTD", "SNAPPY"})
+    private CompressionType compressionType;
+
+    /**
+     * 消息中的用户数量, 分别约为 40B, 4KB, 40KB
+     */
+    @Param({"1", "100", "1000"})
+    private int users;
+
+    private CompressionCodec codec;
+
+    private ByteBuf raw;
+
+    private ByteBuf compressed;
+
+    private int rawSize;
+
+    @Setup
+    public void setup() {
+        List<User> list = new ArrayList<>(users);
+        for (long i = 0; i < users; i++) {
+            list.add(new User(i, "Lesible-" + i));
+        }
+        byte[] payload = new JacksonMessageCodec(JacksonMessageCodec.JSON, new ObjectMapper(), false)
+                .encode(users == 1 ? list.get(0) : list);
+        rawSize = payload.length;
+        codec = CompressionCodecProvider.getCompressionCodec(
+                CompressionCodecProvider.convertToWireProtocol(compressionType));
+        raw = Unpooled.directBuffer(rawSize).writeBytes(payload);
+        compressed = codec.encode(raw);
+        System.out.printf("%n%s users=%d raw=%dB compressed=%dB ratio=%.2f%n", compressionType, users, rawSize,
+                compressed.readableBytes(), (double) rawSize / compressed.readableBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        compressed.release();
+        raw.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        // duplicate 避免读写索引在多次调用间变化
+        ByteBuf encoded = codec.encode(raw.duplicate());
+        int size = encoded.readableBytes();
+        encoded.release();
+        return size;
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        ByteBuf decoded = codec.decode(compressed.duplicate(), rawSize);
+        int size = decoded.readableBytes();
+        decoded.release();
+        return size;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CompressionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
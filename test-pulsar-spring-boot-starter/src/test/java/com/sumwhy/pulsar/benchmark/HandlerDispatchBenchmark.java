@@ -0,0 +1,84 @@
+package com.sumwhy.pulsar.benchmark;
+
+import com.sumwhy.pulsar.consumer.HandlerInvoker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 22:50</p>
+ * <p> 对比每条消息调用消费方法的开销: 原来每次反射获取参数信息并 Method.invoke, 现在由创建时确定的 {@link HandlerInvoker} 调用 </p>
+ * <p> 消息的值已经是方法参数的类型, 只测量分派本身 </p>
+ *
+ * @author 何嘉豪
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerDispatchBenchmark {
+
+    private Handler bean;
+
+    private Method method;
+
+    private HandlerInvoker invoker;
+
+    private Object value;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        bean = new Handler();
+        method = Handler.class.getMethod("handle", String.class);
+        invoker = HandlerInvoker.of(bean, method);
+        value = "Lesible";
+    }
+
+    /**
+     * 原来的分派方式
+     */
+    @Benchmark
+    public Object reflective() throws Exception {
+        Object args = decode(value, method.getParameterTypes()[0]);
+        int parameterCount = method.getParameterCount();
+        if (parameterCount == 1) {
+            return method.invoke(bean, args);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object precompiled() throws Exception {
+        return invoker.invoke(value);
+    }
+
+    private static Object decode(Object value, Class<?> parameterType) {
+        if (!(value instanceof byte[]) || parameterType.equals(value.getClass())) {
+            return value;
+        }
+        throw new IllegalStateException();
+    }
+
+    public static class Handler {
+
+        private int count;
+
+        public void handle(String msg) {
+            count += msg.length();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(HandlerDispatchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
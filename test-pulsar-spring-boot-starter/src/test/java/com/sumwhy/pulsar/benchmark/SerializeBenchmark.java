@@ -0,0 +1,80 @@
+package com.sumwhy.pulsar.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sumwhy.pulsar.codec.JacksonMessageCodec;
+import com.sumwhy.pulsar.codec.MessageCodec;
+import com.sumwhy.pulsar.model.User;
+import com.sumwhy.util.JsonUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> @date: 2026-10-18 14:10</p>
+ * <p> 对比旧的 json 字符串再转 byte 数组, 直接序列化为 byte 数组, 以及 smile 二进制格式的耗时与内存分配 </p>
+ * <p> 直接运行 main 方法, gc profiler 输出的 gc.alloc.rate.norm 即每次序列化分配的字节数 </p>
+ *
+ * @author 何嘉豪
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializeBenchmark {
+
+    /**
+     * 单个对象以及 100 个对象的列表
+     */
+    @Param({"1", "100"})
+    private int size;
+
+    private Object payload;
+
+    private final MessageCodec json = new JacksonMessageCodec(JacksonMessageCodec.JSON, new ObjectMapper(), true);
+
+    private final MessageCodec smile = new JacksonMessageCodec(JacksonMessageCodec.SMILE,
+            new ObjectMapper(new SmileFactory()), false);
+
+    @Setup
+    public void setup() {
+        List<User> users = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            users.add(new User(i, "Lesible-" + i));
+        }
+        payload = size == 1 ? users.get(0) : users;
+    }
+
+    @Benchmark
+    public byte[] jsonString() {
+        return JsonUtil.jsonValue(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] directBytes() {
+        return json.encode(payload);
+    }
+
+    @Benchmark
+    public byte[] smileBytes() {
+        return smile.encode(payload);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SerializeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.sumwhy.pulsar.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p> @date: 2026-10-19 14:40</p>
+ * <p> 信封的写入和拆开, 以及损坏的信封在拆开时抛出异常而不是分配过大的数组 </p>
+ *
+ * @author 何嘉豪
+ */
+class EnvelopeFormatTest {
+
+    @Test
+    void roundTrip() {
+        byte[][] payloads = {
+                "a".getBytes(StandardCharsets.UTF_8),
+                new byte[0],
+                filled(127),
+                filled(128),
+                filled(300),
+                filled(20000)
+        };
+        ByteArrayOutputStream out = EnvelopeFormat.newBuffer(64);
+        int size = 1;
+        for (byte[] payload : payloads) {
+            EnvelopeFormat.write(out, payload);
+            size += EnvelopeFormat.sizeOf(payload.length);
+        }
+        byte[] envelope = out.toByteArray();
+
+        assertThat(envelope).hasSize(size);
+        List<byte[]> unpacked = EnvelopeFormat.unpack(envelope);
+        assertThat(unpacked).hasSize(payloads.length);
+        for (int i = 0; i < payloads.length; i++) {
+            assertThat(unpacked.get(i)).isEqualTo(payloads[i]);
+        }
+    }
+
+    @Test
+    void unpacksEmptyEnvelope() {
+        assertThat(EnvelopeFormat.unpack(EnvelopeFormat.newBuffer(1).toByteArray())).isEmpty();
+    }
+
+    @Test
+    void sizeOfCountsVarintBytes() {
+        assertThat(EnvelopeFormat.sizeOf(0)).isEqualTo(1);
+        assertThat(EnvelopeFormat.sizeOf(127)).isEqualTo(128);
+        assertThat(EnvelopeFormat.sizeOf(128)).isEqualTo(130);
+        assertThat(EnvelopeFormat.sizeOf(16384)).isEqualTo(16387);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(new byte[0]))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(new byte[]{2, 1, 'a'}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] envelope = envelope("abc".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(Arrays.copyOf(envelope, envelope.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedLength() {
+        // 长度的最高位表示后面还有字节, 但信封已经结束
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(new byte[]{1, (byte) 0x80}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOverlongLength() {
+        byte[] envelope = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(envelope)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsLengthNearIntLimit() {
+        // 0x7FFFFFFF, 与读取位置相加会溢出
+        byte[] envelope = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a'};
+
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(envelope)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsNegativeLength() {
+        byte[] envelope = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 'a'};
+
+        assertThatThrownBy(() -> EnvelopeFormat.unpack(envelope)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] envelope(byte[]... payloads) {
+        ByteArrayOutputStream out = EnvelopeFormat.newBuffer(16);
+        for (byte[] payload : payloads) {
+            EnvelopeFormat.write(out, payload);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] filled(int length) {
+        byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) 'x');
+        return payload;
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.sumwhy.pulsar.consumer;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> @date: 2026-10-19 15:20</p>
+ * <p> 累积确认的水位: 按分区推进到之前全部完成的位置, 失败后进入下一代, 重新投递到达前丢弃之后的消息 </p>
+ *
+ * @author 何嘉豪
+ */
+class CumulativeAckTrackerTest {
+
+    private static final String PARTITION_0 = "persistent://public/default/orders-partition-0";
+
+    private static final String PARTITION_1 = "persistent://public/default/orders-partition-1";
+
+    private final CumulativeAckTracker tracker = new CumulativeAckTracker();
+
+    @Test
+    void advancesOnlyPastCompletedPrefix() {
+        Message<?> first = message(PARTITION_0, 1);
+        Message<?> second = message(PARTITION_0, 2);
+        Message<?> third = message(PARTITION_0, 3);
+        CumulativeAckTracker.Entry firstEntry = tracker.register(first);
+        CumulativeAckTracker.Entry secondEntry = tracker.register(second);
+        CumulativeAckTracker.Entry thirdEntry = tracker.register(third);
+
+        assertThat(tracker.complete(secondEntry)).isNull();
+        assertThat(tracker.complete(firstEntry)).isSameAs(second);
+        assertThat(tracker.complete(thirdEntry)).isSameAs(third);
+    }
+
+    @Test
+    void tracksPartitionsSeparately() {
+        Message<?> slow = message(PARTITION_0, 1);
+        Message<?> fast = message(PARTITION_1, 1);
+        CumulativeAckTracker.Entry slowEntry = tracker.register(slow);
+        CumulativeAckTracker.Entry fastEntry = tracker.register(fast);
+
+        assertThat(tracker.complete(fastEntry)).isSameAs(fast);
+        assertThat(tracker.complete(slowEntry)).isSameAs(slow);
+    }
+
+    @Test
+    void failureStalesCurrentGeneration() {
+        CumulativeAckTracker.Entry first = tracker.register(message(PARTITION_0, 1));
+        CumulativeAckTracker.Entry second = tracker.register(message(PARTITION_0, 2));
+        CumulativeAckTracker.Entry third = tracker.register(message(PARTITION_0, 3));
+
+        assertThat(tracker.fail(second)).isTrue();
+
+        assertThat(tracker.isStale(first)).isTrue();
+        assertThat(tracker.isStale(third)).isTrue();
+        // 上一代的消息不再推进水位, 也不再触发重新投递
+        assertThat(tracker.complete(first)).isNull();
+        assertThat(tracker.fail(third)).isFalse();
+    }
+
+    @Test
+    void dropsLaterMessagesUntilRedeliveryArrives() {
+        Message<?> first = message(PARTITION_0, 1);
+        Message<?> second = message(PARTITION_0, 2);
+        CumulativeAckTracker.Entry firstEntry = tracker.register(first);
+        tracker.register(second);
+        tracker.fail(firstEntry);
+
+        // 重新投递之前已经在接收队列中的消息
+        assertThat(tracker.register(message(PARTITION_0, 3))).isNull();
+
+        CumulativeAckTracker.Entry redelivered = tracker.register(message(PARTITION_0, 1));
+        assertThat(redelivered).isNotNull();
+        assertThat(tracker.isStale(redelivered)).isFalse();
+        CumulativeAckTracker.Entry next = tracker.register(message(PARTITION_0, 2));
+        assertThat(next).isNotNull();
+
+        assertThat(tracker.complete(redelivered).getMessageId()).isEqualTo(id(1));
+        assertThat(tracker.complete(next).getMessageId()).isEqualTo(id(2));
+    }
+
+    @Test
+    void rewindsToFirstUnacknowledgedInsteadOfFailedMessage() {
+        CumulativeAckTracker.Entry first = tracker.register(message(PARTITION_0, 1));
+        tracker.register(message(PARTITION_0, 2));
+        CumulativeAckTracker.Entry third = tracker.register(message(PARTITION_0, 3));
+        tracker.complete(first);
+
+        tracker.fail(third);
+
+        // 第 2 条没有处理完成, 从它开始重新投递
+        assertThat(tracker.register(message(PARTITION_0, 3))).isNull();
+        assertThat(tracker.register(message(PARTITION_0, 2))).isNotNull();
+    }
+
+    @Test
+    void onlyRewindsPartitionsWithPendingMessages() {
+        CumulativeAckTracker.Entry done = tracker.register(message(PARTITION_1, 1));
+        tracker.complete(done);
+        CumulativeAckTracker.Entry failed = tracker.register(message(PARTITION_0, 1));
+
+        tracker.fail(failed);
+
+        assertThat(tracker.register(message(PARTITION_1, 2))).isNotNull();
+        assertThat(tracker.register(message(PARTITION_0, 2))).isNull();
+    }
+
+    @Test
+    void resumesFromLaterMessageAfterRedelivery() {
+        CumulativeAckTracker.Entry failed = tracker.register(message(PARTITION_0, 1));
+        tracker.fail(failed);
+        assertThat(tracker.register(message(PARTITION_0, 2))).isNull();
+
+        tracker.redelivered(failed);
+
+        // 第 1 条已经过期或被其他消费者确认, 重新投递从更晚的消息开始
+        CumulativeAckTracker.Entry resumed = tracker.register(message(PARTITION_0, 5));
+        assertThat(resumed).isNotNull();
+        assertThat(tracker.isStale(resumed)).isFalse();
+        assertThat(tracker.register(message(PARTITION_0, 6))).isNotNull();
+    }
+
+    @Test
+    void redeliveryOnlyEndsItsOwnRewind() {
+        CumulativeAckTracker.Entry first = tracker.register(message(PARTITION_0, 1));
+        tracker.fail(first);
+        CumulativeAckTracker.Entry redelivered = tracker.register(message(PARTITION_0, 1));
+        tracker.fail(redelivered);
+
+        // 第一次失败的重新投递在第二次失败之后才发出, 不结束第二次的等待
+        tracker.redelivered(first);
+        assertThat(tracker.register(message(PARTITION_0, 2))).isNull();
+
+        tracker.redelivered(redelivered);
+        assertThat(tracker.register(message(PARTITION_0, 2))).isNotNull();
+    }
+
+    private static Message<?> message(String topic, long sequence) {
+        Message<?> msg = mock(Message.class);
+        when(msg.getTopicName()).thenReturn(topic);
+        when(msg.getMessageId()).thenReturn(id(sequence));
+        return msg;
+    }
+
+    private static MessageId id(long sequence) {
+        return new SequenceId(sequence);
+    }
+
+    /**
+     * 只按序号比较的 messageId
+     */
+    private static final class SequenceId implements MessageId {
+
+        private final long sequence;
+
+        private SequenceId(long sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return ByteBuffer.allocate(Long.BYTES).putLong(sequence).array();
+        }
+
+        @Override
+        public int compareTo(MessageId other) {
+            return Long.compare(sequence, ((SequenceId) other).sequence);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SequenceId && ((SequenceId) other).sequence == sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sequence);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.sumwhy.pulsar.consumer;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> @date: 2026-10-19 16:10</p>
+ * <p> 合并确认时每个分区各自保留水位, 一个分区推进不会覆盖另一个分区还没有确认的水位 </p>
+ *
+ * @author 何嘉豪
+ */
+class KeyStripedDispatcherTest {
+
+    private static final String PARTITION_0 = "persistent://public/default/orders-partition-0";
+
+    private static final String PARTITION_1 = "persistent://public/default/orders-partition-1";
+
+    @SuppressWarnings("rawtypes")
+    private final Consumer consumer = mock(Consumer.class);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(consumer.acknowledgeCumulativeAsync(any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void flushesWatermarkOfEveryPartitionOnClose() {
+        KeyStripedDispatcher dispatcher = dispatcher(100);
+        Message<?> first = message(PARTITION_0);
+        Message<?> second = message(PARTITION_1);
+
+        dispatcher.dispatch(consumer, first);
+        dispatcher.dispatch(consumer, second);
+        dispatcher.close(1000L);
+
+        verify(consumer).acknowledgeCumulativeAsync(first);
+        verify(consumer).acknowledgeCumulativeAsync(second);
+    }
+
+    @Test
+    void flushesWatermarkOfEveryPartitionWhenCountReached() {
+        KeyStripedDispatcher dispatcher = dispatcher(2);
+        Message<?> first = message(PARTITION_0);
+        Message<?> second = message(PARTITION_1);
+
+        dispatcher.dispatch(consumer, first);
+        dispatcher.dispatch(consumer, second);
+
+        verify(consumer, timeout(1000L)).acknowledgeCumulativeAsync(first);
+        verify(consumer, timeout(1000L)).acknowledgeCumulativeAsync(second);
+        dispatcher.close(1000L);
+    }
+
+    private static KeyStripedDispatcher dispatcher(int ackMaxMessages) {
+        return new KeyStripedDispatcher("test", 2, true, 1000L, ackMaxMessages, 60_000L, 16,
+                (consumer, msg) -> null);
+    }
+
+    private static Message<?> message(String topic) {
+        Message<?> msg = mock(Message.class);
+        when(msg.getTopicName()).thenReturn(topic);
+        return msg;
+    }
+
+}
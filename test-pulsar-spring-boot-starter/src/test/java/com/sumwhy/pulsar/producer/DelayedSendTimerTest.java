@@ -0,0 +1,133 @@
+package com.sumwhy.pulsar.producer;
+
+import com.sumwhy.pulsar.properties.GlobalProducerProperties;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> @date: 2026-10-19 12:10</p>
+ * <p> 本地分层时间轮: 超出本层范围的消息逐层下降, 格子在下一轮复用, 关闭时剩余消息交给 broker </p>
+ *
+ * @author 何嘉豪
+ */
+class DelayedSendTimerTest {
+
+    private static final long TICK_MILLIS = 10L;
+
+    /**
+     * 最底层范围 40ms, 第二层 160ms, 第三层 640ms
+     */
+    private static final int WHEEL_SIZE = 4;
+
+    private DelayedSendTimer timer;
+
+    private TopicRoute route;
+
+    private TypedMessageBuilder<Object> builder;
+
+    /**
+     * 消息的值和构建消息时的单调时间
+     */
+    private final Map<Object, Long> sentAt = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        GlobalProducerProperties properties = new GlobalProducerProperties();
+        properties.setLocalDelayThreshold(Duration.ofSeconds(10));
+        properties.setWheelTick(Duration.ofMillis(TICK_MILLIS));
+        properties.setWheelSize(WHEEL_SIZE);
+        timer = new DelayedSendTimer(properties);
+        route = mock(TopicRoute.class);
+        builder = mock(TypedMessageBuilder.class);
+        when(route.newEncodedMessage(isNull(), any())).thenAnswer(invocation -> {
+            sentAt.put(invocation.getArgument(1), System.nanoTime());
+            return builder;
+        });
+        when(builder.deliverAt(anyLong())).thenReturn(builder);
+        when(builder.sendAsync()).thenAnswer(invocation -> CompletableFuture.completedFuture(MessageId.earliest));
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.destroy();
+    }
+
+    @Test
+    void cascadesFromOverflowWheels() throws Exception {
+        long[] delays = {15L, 70L, 250L, 700L};
+        long begin = System.nanoTime();
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (long delay : delays) {
+            futures.add(timer.schedule(route, null, delay, delay));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        long previous = 0L;
+        for (long delay : delays) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(sentAt.get(delay) - begin);
+            // 格子按 tick 取整, 最多提前一个 tick
+            assertThat(elapsed).isGreaterThanOrEqualTo(delay - TICK_MILLIS).isLessThan(delay + 1000L);
+            assertThat(sentAt.get(delay)).isGreaterThanOrEqualTo(previous);
+            previous = sentAt.get(delay);
+        }
+        verify(builder, never()).deliverAt(anyLong());
+    }
+
+    @Test
+    void reusesBucketInNextRound() throws Exception {
+        timer.schedule(route, null, "first", 20L).get(5, TimeUnit.SECONDS);
+
+        // 一整轮之后落在同一个格子, 格子必须以新的到期时间重新进入队列
+        long begin = System.nanoTime();
+        CompletableFuture<MessageId> second = timer.schedule(route, null, "second", TICK_MILLIS * WHEEL_SIZE);
+        CompletableFuture<MessageId> third = timer.schedule(route, null, "third", TICK_MILLIS * WHEEL_SIZE);
+        CompletableFuture.allOf(second, third).get(5, TimeUnit.SECONDS);
+
+        for (String value : new String[]{"second", "third"}) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(sentAt.get(value) - begin);
+            assertThat(elapsed).isGreaterThanOrEqualTo(TICK_MILLIS * WHEEL_SIZE - TICK_MILLIS);
+        }
+    }
+
+    @Test
+    void sendsDelayShorterThanTickWithoutWaitingForNextRound() throws Exception {
+        long begin = System.nanoTime();
+        timer.schedule(route, null, "short", 1L).get(1, TimeUnit.SECONDS);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(sentAt.get("short") - begin)).isLessThan(TICK_MILLIS * WHEEL_SIZE);
+    }
+
+    @Test
+    void handsPendingTasksToBrokerOnDestroy() throws Exception {
+        long deliverAt = System.currentTimeMillis() + 5000L;
+        CompletableFuture<MessageId> future = timer.schedule(route, null, "pending", 5000L);
+
+        timer.destroy();
+
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(MessageId.earliest);
+        verify(builder).deliverAt(longThat(at -> Math.abs(at - deliverAt) < 1000L));
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.sumwhy.pulsar.producer.spill;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p> @date: 2026-10-19 14:10</p>
+ * <p> 分段文件重新打开时的恢复: 半条记录和 crc 不匹配的记录及之后的内容被丢弃, 读取位置从文件头恢复 </p>
+ *
+ * @author 何嘉豪
+ */
+class SpillSegmentTest {
+
+    private static final int SIZE = 4096;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void restoresRecordsAndWritePosition() throws IOException {
+        SpillSegment segment = SpillSegment.create(directory, 7L, SIZE);
+        append(segment, "first", "second", "third");
+        segment.force();
+
+        SpillSegment reopened = open(7L);
+
+        assertThat(readAll(reopened)).containsExactly("first", "second", "third");
+        assertThat(reopened.getSequence()).isEqualTo(7L);
+        // 新记录接在最后一条之后
+        append(reopened, "fourth");
+        assertThat(readAll(open(7L))).containsExactly("first", "second", "third", "fourth");
+    }
+
+    @Test
+    void dropsTornRecord() throws IOException {
+        SpillSegment segment = SpillSegment.create(directory, 0L, SIZE);
+        append(segment, "first", "second");
+        segment.force();
+        int tail = positionOf(segment, 2);
+        // 长度已经写入, 内容只写了一部分
+        try (RandomAccessFile file = file(0L)) {
+            file.seek(tail);
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write("par".getBytes(StandardCharsets.UTF_8));
+        }
+
+        SpillSegment reopened = open(0L);
+
+        assertThat(readAll(reopened)).containsExactly("first", "second");
+        append(reopened, "third");
+        assertThat(readAll(open(0L))).containsExactly("first", "second", "third");
+    }
+
+    @Test
+    void dropsRecordsFromCrcMismatch() throws IOException {
+        SpillSegment segment = SpillSegment.create(directory, 0L, SIZE);
+        append(segment, "first", "second", "third");
+        segment.force();
+        int second = positionOf(segment, 1);
+        try (RandomAccessFile file = file(0L)) {
+            file.seek(second + SpillSegment.RECORD_HEADER_SIZE);
+            file.write('S');
+        }
+
+        SpillSegment reopened = open(0L);
+
+        // 之后的记录即使完整也无法确认边界, 一并丢弃
+        assertThat(readAll(reopened)).containsExactly("first");
+    }
+
+    @Test
+    void restoresReadPosition() throws IOException {
+        SpillSegment segment = SpillSegment.create(directory, 0L, SIZE);
+        append(segment, "first", "second", "third");
+        segment.commitRead(positionOf(segment, 1));
+        segment.force();
+
+        SpillSegment reopened = open(0L);
+
+        assertThat(reopened.getReadPosition()).isEqualTo(positionOf(segment, 1));
+        assertThat(reopened.isFullyRead()).isFalse();
+        assertThat(readAll(reopened)).containsExactly("second", "third");
+
+        reopened.commitRead(positionOf(reopened, 3));
+        reopened.force();
+        assertThat(open(0L).isFullyRead()).isTrue();
+    }
+
+    @Test
+    void clampsReadPositionToRecoveredRecords() throws IOException {
+        SpillSegment segment = SpillSegment.create(directory, 0L, SIZE);
+        append(segment, "first", "second");
+        int second = positionOf(segment, 1);
+        segment.commitRead(positionOf(segment, 2));
+        segment.force();
+        try (RandomAccessFile file = file(0L)) {
+            file.seek(second + SpillSegment.RECORD_HEADER_SIZE);
+            file.write('S');
+        }
+
+        SpillSegment reopened = open(0L);
+
+        assertThat(reopened.getReadPosition()).isEqualTo(second);
+        assertThat(reopened.isFullyRead()).isTrue();
+    }
+
+    @Test
+    void rejectsFileWithoutMagic() throws IOException {
+        try (RandomAccessFile file = file(0L)) {
+            file.setLength(SIZE);
+        }
+
+        assertThatThrownBy(() -> open(0L)).isInstanceOf(IOException.class);
+    }
+
+    private SpillSegment open(long sequence) throws IOException {
+        return SpillSegment.open(new File(directory, SpillSegment.fileName(sequence)), sequence, SIZE);
+    }
+
+    private RandomAccessFile file(long sequence) throws IOException {
+        return new RandomAccessFile(new File(directory, SpillSegment.fileName(sequence)), "rw");
+    }
+
+    private static void append(SpillSegment segment, String... bodies) {
+        for (String body : bodies) {
+            assertThat(segment.append(body.getBytes(StandardCharsets.UTF_8))).isTrue();
+        }
+    }
+
+    /**
+     * @return 第 index 条记录的起始位置, 等于记录数量时为最后一条记录之后的位置
+     */
+    private static int positionOf(SpillSegment segment, int index) {
+        int position = SpillSegment.HEADER_SIZE;
+        for (int i = 0; i < index; i++) {
+            position = segment.next(position);
+        }
+        return position;
+    }
+
+    private static List<String> readAll(SpillSegment segment) {
+        List<String> bodies = new ArrayList<>();
+        int position = segment.getReadPosition();
+        ByteBuffer body;
+        while ((body = segment.read(position)) != null) {
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            bodies.add(new String(bytes, StandardCharsets.UTF_8));
+            position = segment.next(position);
+        }
+        return bodies;
+    }
+
+}